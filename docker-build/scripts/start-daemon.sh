@@ -46,6 +46,12 @@ fi
 JVM_OPT="${JVM_OPT} -XX:+UseG1GC -XX:MaxGCPauseMillis=10 -XX:+ParallelRefProcEnabled -XX:+UnlockExperimentalVMOptions"
 JVM_OPT="${JVM_OPT} -XX:+DoEscapeAnalysis -XX:ParallelGCThreads=${GC_THREADS} -XX:ConcGCThreads=${GC_THREADS}"
 
+# virtual thread scheduler option, the jvm only reads it at startup
+if [ "${WORKER_ENGINE}" = "VIRTUAL" ] && [ -n "${WORKER_CARRIER_PARALLELISM}" ]; then
+  JVM_OPT="${JVM_OPT} -Djdk.virtualThreadScheduler.parallelism=${WORKER_CARRIER_PARALLELISM}"
+  JVM_OPT="${JVM_OPT} -Djdk.virtualThreadScheduler.maxPoolSize=${WORKER_CARRIER_PARALLELISM}"
+fi
+
 # gc log option
 JVM_OPT="${JVM_OPT} -Xlog:gc*=info,gc+phases=debug:$PERF_HOME/logs/gc.log:time,uptime:filecount=10,filesize=100M"
 
@@ -63,4 +63,13 @@ public class CassandraConfig extends QLCommonConfig {
 
     @Value("${CASSANDRA_TABLE_NUM:3}")
     public int tableNum;
+
+    @Value("${CASSANDRA_PRESET_CHUNK_ROWS:10000}")
+    public int presetChunkRows;
+
+    @Value("${CASSANDRA_PRESET_MAX_IN_FLIGHT:1024}")
+    public int presetMaxInFlight;
+
+    @Value("${CASSANDRA_PRESET_BATCH_ENABLE:false}")
+    public boolean presetBatchEnable;
 }
@@ -41,6 +41,14 @@ public class CassandraFlavor extends DefaultDBFlavor {
                 cassandraConfig.replicationFactor, cassandraConfig.durableWrites);
     }
 
+    /**
+     * the table has no clustering column, a scan walks the token ring from the token of the key.
+     */
+    @Override
+    public String scanStatement(String tableName) {
+        return "SELECT * FROM " + tableName + " WHERE token(id) >= token(?) LIMIT ?";
+    }
+
     @Override
     public String createTableStatement(String tableName) {
         StringBuilder tableCql = new StringBuilder("CREATE TABLE IF NOT EXISTS ");
@@ -19,24 +19,35 @@
 
 package com.github.perftool.storage.cassandra.service;
 
+import com.datastax.driver.core.BoundStatement;
 import com.datastax.driver.core.Cluster;
+import com.datastax.driver.core.PreparedStatement;
 import com.datastax.driver.core.ResultSet;
 import com.datastax.driver.core.Row;
 import com.datastax.driver.core.Session;
+import com.datastax.driver.core.TokenRange;
 import com.github.perftool.storage.cassandra.config.CassandraConfig;
 import com.github.perftool.storage.cassandra.flavor.CassandraFlavor;
+import com.github.perftool.storage.common.engine.InFlightWindow;
+import com.github.perftool.storage.common.engine.WorkerEngine;
+import com.github.perftool.storage.common.keyspace.KeyDiscovery;
+import com.github.perftool.storage.common.keyspace.KeyRangeScanner;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.StoredKeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import com.github.perftool.storage.common.preset.PresetCheckpoint;
+import com.github.perftool.storage.common.preset.PresetRunner;
+import com.github.perftool.storage.common.service.VerifyService;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
 import java.util.List;
-import java.util.HashSet;
 import java.util.Set;
-import java.util.Iterator;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 @Service
 @Slf4j
@@ -45,37 +56,90 @@ public class CassandraBootService {
     @Autowired
     private CassandraConfig cassandraConfig;
 
+    @Autowired
+    private VerifyService verifyService;
+
     public static final String KEY_SPACE = "perf_keyspace";
     private Cluster cluster;
 
-    public void boot(MetricFactory metricFactory, List<String> keys) {
-        int keyspaceNum = cassandraConfig.keyspaceNum - 1;
-        while (keyspaceNum >= 0) {
-            for (int i = 0; i < cassandraConfig.tableNum; i++) {
-                for (int j = 0; j < cassandraConfig.threadNum; j++) {
-                    new CassandraStorageThread(cassandraConfig, metricFactory,
-                            cluster.connect(KEY_SPACE + keyspaceNum), keys, i).start();
+    public void boot(MetricFactory metricFactory, KeySpace keys) {
+        WorkerEngine workerEngine = new WorkerEngine(cassandraConfig);
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(cassandraConfig, metricFactory);
+        for (int i = 0; i < cassandraConfig.keyspaceNum; i++) {
+            // sessions are thread safe, share one per keyspace instead of one per worker
+            Session session = cluster.connect(KEY_SPACE + i);
+            ConcurrentMap<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
+            for (int j = 0; j < cassandraConfig.tableNum; j++) {
+                for (int k = 0; k < cassandraConfig.threadNum; k++) {
+                    workerEngine.submit(new CassandraStorageThread(cassandraConfig, metricFactory, session,
+                                    preparedStatements, keys, j, payloadVerifier),
+                            KEY_SPACE + i + "." + cassandraConfig.tableNamePrefix + j);
                 }
-                keyspaceNum--;
             }
         }
+    }
 
+    /**
+     * identifies the tables the keys are stored in, for the key manifest fingerprint.
+     */
+    public String datasetIdentity() {
+        return cassandraConfig.contactPointAddress + ":" + cassandraConfig.port + "/" + KEY_SPACE + "/"
+                + cassandraConfig.tableNamePrefix;
     }
 
-    public Set<String> listKeys() {
-        Set<String> keys = new HashSet<>();
-        try {
-            Session session = cluster.connect(KEY_SPACE + 0);
-            ResultSet ret = session.execute(String.format("SELECT id FROM %s", cassandraConfig.tableNamePrefix + 0));
-            Iterator<Row> rowIterator = ret.iterator();
-            while (rowIterator.hasNext()) {
-                Row row = rowIterator.next();
-                keys.add(row.get(0, String.class));
+    /**
+     * scans the ring token range by token range, ranges are split further when the ring has fewer ranges
+     * than discovery threads. The driver pages each range with the fetch size.
+     */
+    public StoredKeySpace listKeys() {
+        try (
+                Session session = cluster.connect(KEY_SPACE + 0)
+        ) {
+            PreparedStatement statement = session.prepare(String.format(
+                    "SELECT id FROM %s WHERE token(id) > ? AND token(id) <= ?", cassandraConfig.tableNamePrefix + 0));
+            Set<TokenRange> ranges = cluster.getMetadata().getTokenRanges();
+            int splits = Math.max(1, (cassandraConfig.keyDiscoveryThreadNum + ranges.size() - 1) / ranges.size());
+            List<KeyRangeScanner> scanners = new ArrayList<>();
+            for (TokenRange range : ranges) {
+                for (TokenRange split : splits == 1 ? List.of(range) : range.splitEvenly(splits)) {
+                    for (TokenRange unwrapped : split.unwrap()) {
+                        scanners.add(sink -> listKeys(session, statement, unwrapped, sink));
+                    }
+                }
             }
-        } catch (Exception e) {
-            log.error("read cassandra id fail . ", e);
+            return KeyDiscovery.discover("cassandra", cassandraConfig.keyDiscoveryThreadNum, scanners);
         }
-        return keys;
+    }
+
+    /**
+     * @return how many of the keys are stored in the first table, the key manifest checks a sample with it
+     */
+    public long countStored(List<String> keys) {
+        try (
+                Session session = cluster.connect(KEY_SPACE + 0)
+        ) {
+            PreparedStatement statement = session.prepare(String.format(
+                    "SELECT id FROM %s WHERE id = ?", cassandraConfig.tableNamePrefix + 0));
+            return keys.stream().filter(key -> session.execute(statement.bind(key)).one() != null).count();
+        }
+    }
+
+    private void listKeys(Session session, PreparedStatement statement, TokenRange range, StoredKeySpace sink) {
+        int pageSize = cassandraConfig.keyDiscoveryPageSize;
+        BoundStatement bound = statement.bind()
+                .setToken(0, range.getStart())
+                .setToken(1, range.getEnd());
+        bound.setFetchSize(pageSize);
+        ResultSet ret = session.execute(bound);
+        List<String> page = new ArrayList<>(pageSize);
+        for (Row row : ret) {
+            page.add(row.getString(0));
+            if (page.size() == pageSize) {
+                sink.addAll(page);
+                page.clear();
+            }
+        }
+        sink.addAll(page);
     }
 
     public void initDatasource() {
@@ -105,30 +169,38 @@ public class CassandraBootService {
                 .build();
     }
 
-    public void presetData(MetricFactory metricFactory, List<String> keys) {
-        for (int j = 0; j < cassandraConfig.keyspaceNum; j++) {
-            try (
-                    Session session = cluster.connect(KEY_SPACE + j)
-            ) {
-                for (int i = 0; i < cassandraConfig.tableNum; i++) {
-                    this.presetData(metricFactory, keys, session, i);
+    /**
+     * loads every keyspace and table at once, each keyspace session keeps at most
+     * CASSANDRA_PRESET_MAX_IN_FLIGHT inserts in flight. With CASSANDRA_PRESET_BATCH_ENABLE the tables of a
+     * keyspace are loaded together, one unlogged batch per key.
+     */
+    public void presetData(MetricFactory metricFactory, KeySpace keys, PresetCheckpoint checkpoint) {
+        PresetRunner presetRunner =
+                new PresetRunner("cassandra", cassandraConfig.presetThreadNum, metricFactory, checkpoint);
+        List<Session> sessions = new ArrayList<>();
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(cassandraConfig, metricFactory);
+        try {
+            for (int i = 0; i < cassandraConfig.keyspaceNum; i++) {
+                Session session = cluster.connect(KEY_SPACE + i);
+                sessions.add(session);
+                ConcurrentMap<String, PreparedStatement> preparedStatements = new ConcurrentHashMap<>();
+                InFlightWindow window = new InFlightWindow(cassandraConfig.presetMaxInFlight);
+                int tables = cassandraConfig.presetBatchEnable ? 1 : cassandraConfig.tableNum;
+                for (int j = 0; j < tables; j++) {
+                    CassandraStorageThread cassandraStorageThread =
+                            new CassandraStorageThread(cassandraConfig, metricFactory, session,
+                                    preparedStatements, keys, j, payloadVerifier);
+                    String target = cassandraConfig.presetBatchEnable
+                            ? KEY_SPACE + i : KEY_SPACE + i + "." + cassandraConfig.tableNamePrefix + j;
+                    presetRunner.add(target, keys, cassandraConfig.presetChunkRows, chunk ->
+                            cassandraStorageThread.insertChunk(chunk, window, cassandraConfig.presetBatchEnable));
                 }
-            } catch (Exception e) {
-                log.error("preset data fail. ", e);
             }
-        }
-    }
-
-    public void presetData(MetricFactory metricFactory, List<String> keys, Session session, int idx) {
-        try {
-            ExecutorService threadPool = Executors.newFixedThreadPool(cassandraConfig.presetThreadNum);
-            CassandraStorageThread cassandraStorageThread =
-                    new CassandraStorageThread(cassandraConfig, metricFactory, session, keys, idx);
-            List<Callable<Object>> callableList =
-                    keys.stream().map(s -> Executors.callable(() -> cassandraStorageThread.insertData(s))).toList();
-            threadPool.invokeAll(callableList);
+            presetRunner.run();
         } catch (Exception e) {
             log.error("preset data fail. ", e);
+        } finally {
+            sessions.forEach(Session::close);
         }
     }
 }
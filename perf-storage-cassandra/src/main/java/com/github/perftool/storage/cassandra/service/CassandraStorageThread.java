@@ -19,41 +19,92 @@
 
 package com.github.perftool.storage.cassandra.service;
 
+import com.datastax.driver.core.BatchStatement;
+import com.datastax.driver.core.ResultSetFuture;
 import com.datastax.driver.core.Session;
 import com.datastax.driver.core.RegularStatement;
 import com.datastax.driver.core.SimpleStatement;
 import com.datastax.driver.core.ConsistencyLevel;
 import com.datastax.driver.core.PreparedStatement;
+import com.datastax.driver.core.ResultSet;
+import com.datastax.driver.core.Row;
+import com.datastax.driver.core.Statement;
 import com.github.perftool.storage.cassandra.config.CassandraConfig;
 import com.github.perftool.storage.cassandra.flavor.CassandraFlavor;
 import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.distribution.SizeDistribution;
+import com.github.perftool.storage.common.distribution.SizeDistributionFactory;
+import com.github.perftool.storage.common.engine.InFlightWindow;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.metrics.MetricBean;
 import com.github.perftool.storage.common.metrics.MetricFactory;
 import com.github.perftool.storage.common.module.OperationType;
-import com.github.perftool.storage.common.utils.RandomUtils;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.common.util.concurrent.Uninterruptibles;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
+/**
+ * In verify mode field1 holds the verifiable value, scoped by keyspace and table.
+ * <p>
+ * The inserts and deletes of the worker loop span every table of every keyspace like the preset does, with one
+ * unlogged batch per keyspace, so the workers of every table find the keys the others publish.
+ */
 @Slf4j
 public class CassandraStorageThread extends AbstractStorageThread {
 
+    private static final String VERIFIED_FIELD = "field1";
+
     private final Session session;
     private final int tableIdx;
 
     private final CassandraConfig cassandraConfig;
 
+    private final SizeDistribution fieldSizeDistribution;
+
     private final ConcurrentMap<String, RegularStatement> cachedStatements = new ConcurrentHashMap<>();
 
-    public CassandraStorageThread(CassandraConfig config, MetricFactory metricFactory,
-                                  Session session, List<String> initIds, int tableIdx) {
-        super(config, metricFactory, initIds);
+    /**
+     * prepared statements of the session, shared by every thread of the session so each statement is prepared
+     * once.
+     */
+    private final ConcurrentMap<String, PreparedStatement> preparedStatements;
+
+    private final String[] tableScopes;
+
+    /**
+     * the scope of every table of every keyspace, by keyspace and table.
+     */
+    private final String[][] keyspaceScopes;
+
+    public CassandraStorageThread(CassandraConfig config, MetricFactory metricFactory, Session session,
+                                  ConcurrentMap<String, PreparedStatement> preparedStatements, KeySpace keySpace,
+                                  int tableIdx, PayloadVerifier payloadVerifier) {
+        super(config, metricFactory, keySpace, payloadVerifier);
         this.session = session;
+        this.preparedStatements = preparedStatements;
         this.tableIdx = tableIdx;
         this.cassandraConfig = config;
+        this.fieldSizeDistribution = SizeDistributionFactory.create(config.fieldValueLengthDistribution,
+                config.fieldValueLength);
         CassandraFlavor cassandraFlavor = new CassandraFlavor(config);
+        this.tableScopes = new String[config.tableNum];
         for (int i = 0; i < config.tableNum; i++) {
+            tableScopes[i] = session.getLoggedKeyspace() + "." + config.tableNamePrefix + i;
             cachedStatements.putIfAbsent(OperationType.INSERT.name() + i,
                     (RegularStatement) new SimpleStatement(
                             cassandraFlavor.insertStatement(config.tableNamePrefix + i)
@@ -73,40 +124,109 @@ public class CassandraStorageThread extends AbstractStorageThread {
                     (RegularStatement) new SimpleStatement(
                             cassandraFlavor.deleteStatement(config.tableNamePrefix + i)
                     ).setConsistencyLevel(ConsistencyLevel.QUORUM));
+
+            cachedStatements.putIfAbsent(OperationType.SCAN.name() + i,
+                    (RegularStatement) new SimpleStatement(
+                            cassandraFlavor.scanStatement(config.tableNamePrefix + i)
+                    ).setConsistencyLevel(ConsistencyLevel.QUORUM));
+        }
+        this.keyspaceScopes = new String[config.keyspaceNum][config.tableNum];
+        for (int i = 0; i < config.keyspaceNum; i++) {
+            for (int j = 0; j < config.tableNum; j++) {
+                String scope = CassandraBootService.KEY_SPACE + i + "." + config.tableNamePrefix + j;
+                keyspaceScopes[i][j] = scope;
+                cachedStatements.putIfAbsent(OperationType.INSERT.name() + scope,
+                        (RegularStatement) new SimpleStatement(cassandraFlavor.insertStatement(scope))
+                                .setConsistencyLevel(ConsistencyLevel.QUORUM));
+                cachedStatements.putIfAbsent(OperationType.DELETE.name() + scope,
+                        (RegularStatement) new SimpleStatement(cassandraFlavor.deleteStatement(scope))
+                                .setConsistencyLevel(ConsistencyLevel.QUORUM));
+            }
         }
     }
 
-    @Override
-    public void insertData(String id) {
-        long start = System.currentTimeMillis();
-        try {
-            RegularStatement toPrepare = cachedStatements.get(OperationType.INSERT.name() + tableIdx);
-            PreparedStatement prepared = session.prepare(toPrepare);
-            Object[] param = new Object[cassandraConfig.fieldCount];
-            param[0] = id;
-            for (int i = 1; i < cassandraConfig.fieldCount; i++) {
-                param[i] = RandomUtils.getRandomStr(cassandraConfig.fieldValueLength);
-            }
-            session.execute(prepared.bind(param));
-            insertMetricBean.success(System.currentTimeMillis() - start);
-        } catch (Exception e) {
-            log.error("insert cassandra data fail. ", e);
-            insertMetricBean.fail(System.currentTimeMillis() - start);
+    private PreparedStatement prepared(OperationType operationType) {
+        return prepared(operationType, tableIdx);
+    }
+
+    private PreparedStatement prepared(OperationType operationType, int table) {
+        return prepared(operationType.name() + table);
+    }
+
+    /**
+     * @param key the key of the statement in the cached statements
+     */
+    private PreparedStatement prepared(String key) {
+        return preparedStatements.computeIfAbsent(key, k -> session.prepare(cachedStatements.get(k)));
+    }
+
+    /**
+     * @param scope the keyspace and table the row is inserted into
+     */
+    private Object[] insertParams(String id, String scope) {
+        Object[] param = new Object[cassandraConfig.fieldCount];
+        param[0] = id;
+        for (int i = 1; i < cassandraConfig.fieldCount; i++) {
+            int length = fieldSizeDistribution.next(random());
+            param[i] = i == 1 ? insertValue(scope, id, length) : randomValue(length);
+        }
+        return param;
+    }
+
+    /**
+     * the first parameter is the value of field1.
+     */
+    private Object[] updateParams(String id) {
+        Object[] param = new Object[cassandraConfig.updateFieldCount + 1];
+        for (int i = 0; i < cassandraConfig.updateFieldCount; i++) {
+            int length = fieldSizeDistribution.next(random());
+            param[i] = i == 0 ? updateValue(tableScopes[tableIdx], id, length) : randomValue(length);
+        }
+        param[cassandraConfig.updateFieldCount] = id;
+        return param;
+    }
+
+    private static String verifiedValue(ResultSet resultSet) {
+        Row row = resultSet.one();
+        return row == null ? null : row.getString(VERIFIED_FIELD);
+    }
+
+    /**
+     * Total length of the values of every column of the row.
+     */
+    private static long rowSize(Row row) {
+        long size = 0;
+        for (int i = 0; i < row.getColumnDefinitions().size(); i++) {
+            String value = row.getString(i);
+            size += value == null ? 0 : value.length();
         }
+        return size;
+    }
+
+    /**
+     * Total length of the bound field values, the primary key excluded.
+     */
+    private static int rowSize(Object[] param, String id) {
+        int size = -id.length();
+        for (Object value : param) {
+            size += ((String) value).length();
+        }
+        return size;
+    }
+
+    @Override
+    public boolean insertData(String id) {
+        return insertDataAsync(id).toCompletableFuture().join();
     }
 
     @Override
     public void updateData(String id) {
-        long start = System.currentTimeMillis();
+        long start = startTime();
         try {
-            RegularStatement toPrepare = cachedStatements.get(OperationType.UPDATE.name() + tableIdx);
-            Object[] param = new Object[cassandraConfig.updateFieldCount + 1];
-            for (int i = 0; i < cassandraConfig.updateFieldCount; i++) {
-                param[i] = RandomUtils.getRandomStr(cassandraConfig.fieldValueLength);
-            }
-            param[cassandraConfig.updateFieldCount] = id;
-            session.execute(session.prepare(toPrepare).bind(param));
-            updateMetricBean.success(System.currentTimeMillis() - start);
+            Object[] param = updateParams(id);
+            session.execute(prepared(OperationType.UPDATE).bind(param));
+            updated(tableScopes[tableIdx], id, (String) param[0]);
+            updateMetricBean.success(System.currentTimeMillis() - start, rowSize(param, id));
         } catch (Exception e) {
             log.error("update cassandra data fail. ", e);
             updateMetricBean.fail(System.currentTimeMillis() - start);
@@ -115,10 +235,13 @@ public class CassandraStorageThread extends AbstractStorageThread {
 
     @Override
     public void readData(String id) {
-        long start = System.currentTimeMillis();
+        long start = startTime();
+        int expectedVersion = expectedVersion(tableScopes[tableIdx], id);
         try {
-            RegularStatement toPrepare = cachedStatements.get(OperationType.READ.name() + tableIdx);
-            session.execute(session.prepare(toPrepare).bind(id));
+            ResultSet resultSet = session.execute(prepared(OperationType.READ).bind(id));
+            if (verifying()) {
+                verify(tableScopes[tableIdx], id, expectedVersion, verifiedValue(resultSet));
+            }
             readMetricBean.success(System.currentTimeMillis() - start);
         } catch (Exception e) {
             log.error("read cassandra data fail. ", e);
@@ -128,13 +251,250 @@ public class CassandraStorageThread extends AbstractStorageThread {
 
     @Override
     public void deleteData(String id) {
-        long start = System.currentTimeMillis();
+        deleteDataAsync(id).toCompletableFuture().join();
+    }
+
+    /**
+     * reads the rows from the token of the key on, the driver pages through them while they are consumed.
+     */
+    @Override
+    public void scanData(String id, int length) {
+        long start = startTime();
         try {
-            RegularStatement toPrepare = cachedStatements.get(OperationType.DELETE.name() + tableIdx);
-            session.execute(session.prepare(toPrepare).bind(id));
-            deleteMetricBean.success(System.currentTimeMillis() - start);
+            ResultSet resultSet = session.execute(prepared(OperationType.SCAN).bind(id, length));
+            long size = 0;
+            long items = 0;
+            for (Row row : resultSet) {
+                items++;
+                size += rowSize(row);
+            }
+            scanMetricBean.success(System.currentTimeMillis() - start, size);
+            scanMetricBean.items(items);
         } catch (Exception e) {
-            deleteMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("scan cassandra data fail. ", e);
+            scanMetricBean.fail(System.currentTimeMillis() - start);
+        }
+    }
+
+    /**
+     * reads the keys with one asynchronous READ each and waits for all of them, an IN on the partition key would
+     * make one coordinator gather the partitions from the replicas of every key.
+     */
+    @Override
+    public void multiReadData(List<String> ids) {
+        multiReadDataAsync(ids).toCompletableFuture().join();
+    }
+
+    /**
+     * inserts the key into every table of every keyspace, the rows of a keyspace share the partition key so its
+     * batch is routed to the replicas of the key. The inserts are recorded as one insert.
+     */
+    @Override
+    public CompletionStage<Boolean> insertDataAsync(String id) {
+        long start = startTime();
+        List<Statement> batches = new ArrayList<>(keyspaceScopes.length);
+        int size = 0;
+        for (String[] scopes : keyspaceScopes) {
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            for (String scope : scopes) {
+                Object[] param = insertParams(id, scope);
+                batch.add(prepared(OperationType.INSERT.name() + scope).bind(param));
+                size += rowSize(param, id);
+            }
+            batches.add(batch.setConsistencyLevel(ConsistencyLevel.QUORUM));
         }
+        AtomicBoolean stored = new AtomicBoolean();
+        return executeAllAsync(batches, insertMetricBean, start, size, "insert", () -> stored.set(true))
+                .thenApply(v -> stored.get());
+    }
+
+    @Override
+    public CompletionStage<Void> updateDataAsync(String id) {
+        long start = startTime();
+        Object[] param = updateParams(id);
+        return executeAsync(prepared(OperationType.UPDATE).bind(param), updateMetricBean, start, rowSize(param, id),
+                "update", resultSet -> updated(tableScopes[tableIdx], id, (String) param[0]));
+    }
+
+    @Override
+    public CompletionStage<Void> readDataAsync(String id) {
+        long start = startTime();
+        if (!verifying()) {
+            return executeAsync(prepared(OperationType.READ).bind(id), readMetricBean, start, -1, "read", null);
+        }
+        int expectedVersion = expectedVersion(tableScopes[tableIdx], id);
+        return executeAsync(prepared(OperationType.READ).bind(id), readMetricBean, start, -1, "read",
+                resultSet -> verify(tableScopes[tableIdx], id, expectedVersion, verifiedValue(resultSet)));
+    }
+
+    @Override
+    public CompletionStage<Void> multiReadDataAsync(List<String> ids) {
+        long start = startTime();
+        int[] expectedVersions = new int[ids.size()];
+        List<ResultSetFuture> futures = new ArrayList<>(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            expectedVersions[i] = expectedVersion(tableScopes[tableIdx], ids.get(i));
+            futures.add(session.executeAsync(prepared(OperationType.READ).bind(ids.get(i))));
+        }
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ListenableFuture<List<ResultSet>> all = Futures.allAsList(futures);
+        all.addListener(() -> {
+            try {
+                List<ResultSet> resultSets = Uninterruptibles.getUninterruptibly(all);
+                long size = 0;
+                for (int i = 0; i < ids.size(); i++) {
+                    Row row = resultSets.get(i).one();
+                    size += row == null ? 0 : rowSize(row);
+                    if (verifying()) {
+                        verify(tableScopes[tableIdx], ids.get(i), expectedVersions[i],
+                                row == null ? null : row.getString(VERIFIED_FIELD));
+                    }
+                }
+                multiReadMetricBean.success(System.currentTimeMillis() - start, size);
+                multiReadMetricBean.items(ids.size());
+            } catch (Exception e) {
+                multiReadMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("multi read cassandra data fail. ", e);
+            }
+            result.complete(null);
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * deletes the key from every table of every keyspace it was inserted into, the deletes are recorded as one
+     * delete.
+     */
+    @Override
+    public CompletionStage<Void> deleteDataAsync(String id) {
+        long start = startTime();
+        List<Statement> batches = new ArrayList<>(keyspaceScopes.length);
+        for (String[] scopes : keyspaceScopes) {
+            BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+            for (String scope : scopes) {
+                batch.add(prepared(OperationType.DELETE.name() + scope).bind(id));
+            }
+            batches.add(batch.setConsistencyLevel(ConsistencyLevel.QUORUM));
+        }
+        return executeAllAsync(batches, deleteMetricBean, start, -1, "delete", null);
+    }
+
+    /**
+     * inserts the keys asynchronously through the in-flight window shared by the loaders of the session and
+     * waits for all of them. With {@code batchTables} the rows of every table for a key are sent as one
+     * unlogged batch, all of them share the partition key so the batch is routed to the replicas of the key.
+     *
+     * @return the payload bytes written
+     */
+    public long insertChunk(KeySpace keys, InFlightWindow window, boolean batchTables) throws InterruptedException {
+        AtomicLong bytes = new AtomicLong();
+        AtomicInteger failures = new AtomicInteger();
+        CountDownLatch pending = new CountDownLatch((int) keys.size());
+        for (long i = 0; i < keys.size(); i++) {
+            String id = keys.key(i);
+            Statement statement;
+            int size = 0;
+            if (batchTables) {
+                BatchStatement batch = new BatchStatement(BatchStatement.Type.UNLOGGED);
+                for (int table = 0; table < cassandraConfig.tableNum; table++) {
+                    Object[] param = insertParams(id, tableScopes[table]);
+                    batch.add(prepared(OperationType.INSERT, table).bind(param));
+                    size += rowSize(param, id);
+                }
+                statement = batch.setConsistencyLevel(ConsistencyLevel.QUORUM);
+            } else {
+                Object[] param = insertParams(id, tableScopes[tableIdx]);
+                statement = prepared(OperationType.INSERT).bind(param);
+                size = rowSize(param, id);
+            }
+            int rowsSize = size;
+            window.submit(() -> {
+                long start = System.currentTimeMillis();
+                CompletableFuture<Void> done = new CompletableFuture<>();
+                ResultSetFuture future = session.executeAsync(statement);
+                future.addListener(() -> {
+                    try {
+                        future.getUninterruptibly();
+                        insertMetricBean.success(System.currentTimeMillis() - start, rowsSize);
+                        bytes.addAndGet(rowsSize);
+                    } catch (Exception e) {
+                        insertMetricBean.fail(System.currentTimeMillis() - start);
+                        if (failures.getAndIncrement() == 0) {
+                            log.error("preset cassandra data fail. ", e);
+                        }
+                    }
+                    pending.countDown();
+                    done.complete(null);
+                }, MoreExecutors.directExecutor());
+                return done;
+            });
+        }
+        pending.await();
+        if (failures.get() > 0) {
+            throw new IllegalStateException(failures.get() + " of " + keys.size() + " inserts failed");
+        }
+        return bytes.get();
+    }
+
+    /**
+     * @param size     size of the written row, negative when the operation writes nothing
+     * @param onResult called with the result of a successful operation, may be null
+     */
+    private CompletionStage<Void> executeAsync(Statement statement, MetricBean metricBean, long start, int size,
+                                               String action, Consumer<ResultSet> onResult) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        ResultSetFuture future = session.executeAsync(statement);
+        future.addListener(() -> {
+            try {
+                ResultSet resultSet = future.getUninterruptibly();
+                if (onResult != null) {
+                    onResult.accept(resultSet);
+                }
+                if (size < 0) {
+                    metricBean.success(System.currentTimeMillis() - start);
+                } else {
+                    metricBean.success(System.currentTimeMillis() - start, size);
+                }
+            } catch (Exception e) {
+                metricBean.fail(System.currentTimeMillis() - start);
+                log.error("{} cassandra data fail. ", action, e);
+            }
+            result.complete(null);
+        }, MoreExecutors.directExecutor());
+        return result;
+    }
+
+    /**
+     * runs the statements at once, the operation succeeds once all of them did.
+     *
+     * @param size      size of the written rows, negative when the operation writes nothing
+     * @param onSuccess called once every statement succeeded, may be null
+     */
+    private CompletionStage<Void> executeAllAsync(List<Statement> statements, MetricBean metricBean, long start,
+                                                  int size, String action, Runnable onSuccess) {
+        CompletableFuture<Void> result = new CompletableFuture<>();
+        List<ResultSetFuture> futures = new ArrayList<>(statements.size());
+        for (Statement statement : statements) {
+            futures.add(session.executeAsync(statement));
+        }
+        ListenableFuture<List<ResultSet>> all = Futures.allAsList(futures);
+        all.addListener(() -> {
+            try {
+                Uninterruptibles.getUninterruptibly(all);
+                if (onSuccess != null) {
+                    onSuccess.run();
+                }
+                if (size < 0) {
+                    metricBean.success(System.currentTimeMillis() - start);
+                } else {
+                    metricBean.success(System.currentTimeMillis() - start, size);
+                }
+            } catch (Exception e) {
+                metricBean.fail(System.currentTimeMillis() - start);
+                log.error("{} cassandra data fail. ", action, e);
+            }
+            result.complete(null);
+        }, MoreExecutors.directExecutor());
+        return result;
     }
 }
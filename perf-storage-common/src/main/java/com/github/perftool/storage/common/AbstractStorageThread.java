@@ -20,22 +20,38 @@
 package com.github.perftool.storage.common;
 
 import com.github.perftool.storage.common.config.CommonConfig;
+import com.github.perftool.storage.common.distribution.SizeDistribution;
+import com.github.perftool.storage.common.distribution.SizeDistributionFactory;
+import com.github.perftool.storage.common.distribution.KeyChooser;
+import com.github.perftool.storage.common.distribution.KeyChooserFactory;
+import com.github.perftool.storage.common.engine.InFlightWindow;
+import com.github.perftool.storage.common.engine.Pacer;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.LiveKeySpace;
 import com.github.perftool.storage.common.metrics.MetricBean;
 import com.github.perftool.storage.common.metrics.MetricFactory;
 import com.github.perftool.storage.common.module.OperationType;
-import com.github.perftool.storage.common.utils.RandomUtils;
-import com.google.common.util.concurrent.RateLimiter;
+import com.github.perftool.storage.common.payload.PayloadKind;
+import com.github.perftool.storage.common.payload.PayloadPool;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
 import lombok.extern.slf4j.Slf4j;
 
+import java.io.InputStream;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
+import java.util.random.RandomGenerator;
 
 @Slf4j
-public abstract class AbstractStorageThread extends Thread {
+public abstract class AbstractStorageThread implements Runnable {
 
     private final CommonConfig commonConfig;
 
-    private final RateLimiter rateLimiter;
+    private Pacer pacer;
 
     protected final MetricBean insertMetricBean;
 
@@ -45,37 +61,381 @@ public abstract class AbstractStorageThread extends Thread {
 
     protected final MetricBean readMetricBean;
 
-    public final List<String> initIds;
+    protected final MetricBean scanMetricBean;
 
-    public AbstractStorageThread(CommonConfig commonConfig, MetricFactory metricFactory, List<String> initIds) {
+    protected final MetricBean multiReadMetricBean;
+
+    private final SizeDistribution scanLengthDistribution;
+
+    private final SizeDistribution multiReadSizeDistribution;
+
+    public final KeySpace keySpace;
+
+    /**
+     * the key space when it tracks inserts and deletes, null for the fixed key spaces used by preset.
+     */
+    private final LiveKeySpace liveKeySpace;
+
+    private final KeyChooser keyChooser;
+
+    private PayloadPool textPayloadPool;
+
+    private PayloadPool binaryPayloadPool;
+
+    /**
+     * checks read values when VERIFY_ENABLE is set, null otherwise.
+     */
+    private final PayloadVerifier payloadVerifier;
+
+    private SplittableRandom random;
+
+    /**
+     * thread running the current slot of the worker, the only one allowed to use the worker random stream.
+     */
+    private volatile Thread owner;
+
+    /**
+     * window of pipelined operations, null when the worker issues synchronous operations.
+     */
+    private final InFlightWindow inFlightWindow;
+
+    /**
+     * intended start time of the current slot in open-loop mode, zero when there is none.
+     */
+    private long intendedStartMs;
+
+    /**
+     * @param payloadVerifier verifier shared by the workers of the storage type, null unless VERIFY_ENABLE is set
+     */
+    public AbstractStorageThread(CommonConfig commonConfig, MetricFactory metricFactory, KeySpace keySpace,
+                                 PayloadVerifier payloadVerifier) {
         this.commonConfig = commonConfig;
-        this.rateLimiter = RateLimiter.create(commonConfig.threadRateLimit);
+        this.pacer = new Pacer(commonConfig.threadRateLimit);
         this.insertMetricBean = metricFactory.newMetricBean(OperationType.INSERT);
         this.deleteMetricBean = metricFactory.newMetricBean(OperationType.DELETE);
         this.updateMetricBean = metricFactory.newMetricBean(OperationType.UPDATE);
         this.readMetricBean = metricFactory.newMetricBean(OperationType.READ);
-        this.initIds = initIds;
+        this.scanMetricBean = metricFactory.newMetricBean(OperationType.SCAN);
+        this.multiReadMetricBean = metricFactory.newMetricBean(OperationType.MULTI_READ);
+        this.scanLengthDistribution = SizeDistributionFactory.create(commonConfig.scanLengthDistribution,
+                commonConfig.scanLength);
+        this.multiReadSizeDistribution = SizeDistributionFactory.create(commonConfig.multiReadSizeDistribution,
+                commonConfig.multiReadSize);
+        this.keySpace = keySpace;
+        this.liveKeySpace = keySpace instanceof LiveKeySpace ? (LiveKeySpace) keySpace : null;
+        this.keyChooser = KeyChooserFactory.create(commonConfig);
+        this.random = new SplittableRandom();
+        this.inFlightWindow = commonConfig.maxInFlightPerWorker > 1
+                ? new InFlightWindow(commonConfig.maxInFlightPerWorker) : null;
+        this.payloadVerifier = payloadVerifier;
+    }
+
+    /**
+     * replaces the per worker pacer, used by the worker engine to share a table or global rate budget.
+     */
+    public void usePacer(Pacer pacer) {
+        this.pacer = pacer;
+    }
+
+    /**
+     * replaces the worker random stream, used by the worker engine to hand out streams split from RANDOM_SEED.
+     */
+    public void useRandom(SplittableRandom random) {
+        this.random = random;
     }
 
+    /**
+     * In open-loop mode every slot of the pacer is issued even when the previous operation overran it, and
+     * latency is measured from the intended start of the slot. A stalled backend is then charged for the
+     * requests it delayed instead of silently dropping them.
+     */
     @Override
     public void run() {
         while (true) {
-            if (rateLimiter.tryAcquire(commonConfig.threadRateLimitTimeoutMs, TimeUnit.MILLISECONDS)) {
-                try {
-                    if (commonConfig.readRatePercent > RandomUtils.randomPercentage()) {
-                        this.readData(initIds.get(RandomUtils.randomElem(initIds.size())));
-                    }
-                    if (commonConfig.updateRatePercent > RandomUtils.randomPercentage()) {
-                        this.updateData(initIds.get(RandomUtils.randomElem(initIds.size())));
-                    }
-                } catch (Throwable e) {
-                    log.error("unexpected exception ", e);
+            runSlot(pacer.acquire(commonConfig.openLoopEnable));
+        }
+    }
+
+    /**
+     * claims the next pacer slot without waiting for it, used by engines that schedule the slot themselves.
+     *
+     * @return the intended start of the slot in {@link System#nanoTime()} terms
+     */
+    public long claimSlot() {
+        return pacer.claim(commonConfig.openLoopEnable);
+    }
+
+    /**
+     * runs the operations of one slot once it is due. Slots of a worker never run concurrently, but may run on
+     * different threads.
+     */
+    public void runSlot(long slotNanos) {
+        owner = Thread.currentThread();
+        if (commonConfig.openLoopEnable) {
+            intendedStartMs = System.currentTimeMillis()
+                    - TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - slotNanos);
+        }
+        try {
+            doOperation();
+        } finally {
+            intendedStartMs = 0;
+            owner = null;
+        }
+    }
+
+    private void doOperation() {
+        try {
+            if (commonConfig.readRatePercent > random.nextDouble()) {
+                String id = nextKey();
+                if (id == null) {
+                    log.debug("no live key to read");
+                } else if (inFlightWindow == null) {
+                    this.readData(id);
+                } else {
+                    inFlightWindow.submit(() -> this.readDataAsync(id));
+                }
+            }
+            if (commonConfig.updateRatePercent > random.nextDouble()) {
+                String id = nextKey();
+                if (id == null) {
+                    log.debug("no live key to update");
+                } else if (inFlightWindow == null) {
+                    this.updateData(id);
+                } else {
+                    inFlightWindow.submit(() -> this.updateDataAsync(id));
                 }
             }
+            if (commonConfig.scanRatePercent > random.nextDouble()) {
+                String id = nextKey();
+                int length = Math.max(1, scanLengthDistribution.next(random));
+                if (id == null) {
+                    log.debug("no live key to scan from");
+                } else if (inFlightWindow == null) {
+                    this.scanData(id, length);
+                } else {
+                    inFlightWindow.submit(() -> this.scanDataAsync(id, length));
+                }
+            }
+            if (commonConfig.multiReadRatePercent > random.nextDouble()) {
+                List<String> ids = nextKeys(Math.max(1, multiReadSizeDistribution.next(random)));
+                if (ids.isEmpty()) {
+                    log.debug("no live key to multi read");
+                } else if (inFlightWindow == null) {
+                    this.multiReadData(ids);
+                } else {
+                    inFlightWindow.submit(() -> this.multiReadDataAsync(ids));
+                }
+            }
+            if (liveKeySpace != null && commonConfig.insertRatePercent > random.nextDouble()) {
+                doInsert();
+            }
+            if (liveKeySpace != null && commonConfig.deleteRatePercent > random.nextDouble()) {
+                doDelete();
+            }
+            doBackendOperation();
+        } catch (Throwable e) {
+            log.error("unexpected exception ", e);
+        }
+    }
+
+    /**
+     * operations only one backend has, run by the worker loop after the common ones in every slot.
+     */
+    protected void doBackendOperation() {
+    }
+
+    /**
+     * inserts a freshly allocated key, it becomes visible to the other workers once the insert returned.
+     */
+    private void doInsert() {
+        long index = liveKeySpace.allocate();
+        String id = liveKeySpace.key(index);
+        if (inFlightWindow == null) {
+            this.insertData(id, () -> liveKeySpace.publish(index));
+        } else {
+            inFlightWindow.submit(() -> this.insertDataAsync(id, () -> liveKeySpace.publish(index)));
+        }
+    }
+
+    /**
+     * deletes a live key, it is retired before the delete is issued so no other worker picks it again.
+     */
+    private void doDelete() {
+        long index = liveKeySpace.retire(random, keyChooser);
+        if (index < 0) {
+            log.debug("no live key to delete");
+            return;
+        }
+        String id = liveKeySpace.key(index);
+        if (inFlightWindow == null) {
+            this.deleteData(id);
+        } else {
+            inFlightWindow.submit(() -> this.deleteDataAsync(id));
+        }
+    }
+
+    /**
+     * @return the key of the next operation, null when a live key space has no live key to offer
+     */
+    protected String nextKey() {
+        if (liveKeySpace != null) {
+            long index = liveKeySpace.sampleLive(random(), keyChooser);
+            return index < 0 ? null : liveKeySpace.key(index);
+        }
+        return keySpace.key(keyChooser.next(random(), keySpace.size()));
+    }
+
+    /**
+     * @return up to {@code count} keys chosen like the key of a read, a key may be chosen more than once
+     */
+    private List<String> nextKeys(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            String id = nextKey();
+            if (id != null) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * a random value of exactly the given length, sliced from the shared payload pool.
+     */
+    protected String randomValue(int length) {
+        if (textPayloadPool == null) {
+            textPayloadPool = payloadPool(PayloadKind.TEXT);
+        }
+        return textPayloadPool.nextString(random(), length);
+    }
+
+    protected InputStream randomValueStream(int length) {
+        if (binaryPayloadPool == null) {
+            binaryPayloadPool = payloadPool(PayloadKind.BINARY);
         }
+        return binaryPayloadPool.nextStream(random(), length);
     }
 
-    public abstract void insertData(String id);
+    protected boolean verifying() {
+        return payloadVerifier != null;
+    }
+
+    protected String insertValue(String id, int length) {
+        return insertValue("", id, length);
+    }
+
+    /**
+     * the value an insert writes, a verifiable value of version zero in verify mode.
+     *
+     * @param scope the table or bucket holding the key, a key stored in several places is verified per place
+     */
+    protected String insertValue(String scope, String id, int length) {
+        return payloadVerifier == null ? randomValue(length) : payloadVerifier.value(verifyKey(scope, id), 0, length);
+    }
+
+    protected String updateValue(String id, int length) {
+        return updateValue("", id, length);
+    }
+
+    /**
+     * the value an update writes, in verify mode a verifiable value of the next version of the key, to be
+     * passed to {@link #updated} once the update completed.
+     */
+    protected String updateValue(String scope, String id, int length) {
+        if (payloadVerifier == null) {
+            return randomValue(length);
+        }
+        String key = verifyKey(scope, id);
+        return payloadVerifier.value(key, payloadVerifier.nextVersion(key), length);
+    }
+
+    protected void updated(String id, String value) {
+        updated("", id, value);
+    }
+
+    protected void updated(String scope, String id, String value) {
+        if (payloadVerifier != null) {
+            payloadVerifier.updated(verifyKey(scope, id), value);
+        }
+    }
+
+    protected int expectedVersion(String id) {
+        return expectedVersion("", id);
+    }
+
+    /**
+     * the version a read must find, to be taken before the read is issued.
+     */
+    protected int expectedVersion(String scope, String id) {
+        return payloadVerifier == null ? 0 : payloadVerifier.expectedVersion(verifyKey(scope, id));
+    }
+
+    protected void verify(String id, int expectedVersion, String value) {
+        verify("", id, expectedVersion, value);
+    }
+
+    /**
+     * checks a read value in verify mode, outcomes are counted in perf_storage_verify_count.
+     *
+     * @param value the value read, null when the key has none
+     */
+    protected void verify(String scope, String id, int expectedVersion, String value) {
+        if (payloadVerifier != null) {
+            payloadVerifier.verify(verifyKey(scope, id), expectedVersion, value);
+        }
+    }
+
+    private static String verifyKey(String scope, String id) {
+        return scope.isEmpty() ? id : scope + "/" + id;
+    }
+
+    private PayloadPool payloadPool(PayloadKind kind) {
+        return PayloadPool.shared(kind, commonConfig.payloadPoolSize, commonConfig.randomSeed,
+                commonConfig.payloadCompressionRatio);
+    }
+
+    /**
+     * random stream of the worker, operations invoked from other threads, like the preset pools sharing one
+     * instance, get the thread local random instead.
+     */
+    protected RandomGenerator random() {
+        return isWorkerThread() ? random : ThreadLocalRandom.current();
+    }
+
+    /**
+     * @return true when called from the thread running the worker loop of this instance
+     */
+    protected boolean isWorkerThread() {
+        return Thread.currentThread() == owner;
+    }
+
+    /**
+     * start time of an operation, in open-loop mode every operation the worker loop issues in a slot starts at
+     * the intended time of the slot, so an operation queued behind another of the same slot is charged for the
+     * wait.
+     */
+    protected long startTime() {
+        long intended = intendedStartMs;
+        if (intended != 0 && isWorkerThread()) {
+            return intended;
+        }
+        return System.currentTimeMillis();
+    }
+
+    /**
+     * @return true when the key is stored, only stored keys are published to the live key space
+     */
+    public abstract boolean insertData(String id);
+
+    /**
+     * inserts the key and runs {@code onStored} once it is stored. Drivers deferring their writes run it when the
+     * deferred write succeeds and drop it when it fails.
+     */
+    public void insertData(String id, Runnable onStored) {
+        if (this.insertData(id)) {
+            onStored.run();
+        }
+    }
 
     public abstract void updateData(String id);
 
@@ -83,4 +443,62 @@ public abstract class AbstractStorageThread extends Thread {
 
     public abstract void deleteData(String id);
 
+    /**
+     * reads up to {@code length} keys from {@code id} on, in the order of the backend, consuming every value
+     * returned so the read is paid for in full.
+     */
+    public abstract void scanData(String id, int length);
+
+    /**
+     * reads the keys in one batch the way the backend reads a group of keys natively, the batch is recorded
+     * as one operation and its keys as items.
+     */
+    public abstract void multiReadData(List<String> ids);
+
+    /**
+     * asynchronous variants used when MAX_IN_FLIGHT_PER_WORKER is greater than one, the metrics are recorded
+     * when the operation completes. Drivers without a pipelined api keep the default, which runs the
+     * synchronous operation in place.
+     */
+    public CompletionStage<Boolean> insertDataAsync(String id) {
+        return CompletableFuture.completedFuture(this.insertData(id));
+    }
+
+    /**
+     * asynchronous variant of {@link #insertData(String, Runnable)}, {@code onStored} may run after the returned
+     * stage completes when the driver defers the write.
+     */
+    public CompletionStage<Void> insertDataAsync(String id, Runnable onStored) {
+        return this.insertDataAsync(id).thenAccept(stored -> {
+            if (stored) {
+                onStored.run();
+            }
+        });
+    }
+
+    public CompletionStage<Void> updateDataAsync(String id) {
+        this.updateData(id);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletionStage<Void> readDataAsync(String id) {
+        this.readData(id);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletionStage<Void> deleteDataAsync(String id) {
+        this.deleteData(id);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletionStage<Void> scanDataAsync(String id, int length) {
+        this.scanData(id, length);
+        return CompletableFuture.completedFuture(null);
+    }
+
+    public CompletionStage<Void> multiReadDataAsync(List<String> ids) {
+        this.multiReadData(ids);
+        return CompletableFuture.completedFuture(null);
+    }
+
 }
@@ -19,6 +19,9 @@
 
 package com.github.perftool.storage.common.config;
 
+import com.github.perftool.storage.common.distribution.KeyDistributionType;
+import com.github.perftool.storage.common.engine.RateLimitScope;
+import com.github.perftool.storage.common.engine.WorkerEngineType;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.stereotype.Component;
@@ -30,17 +33,71 @@ public class CommonConfig {
     @Value("${DATA_SET_SIZE:100000}")
     public int dataSetSize;
 
+    @Value("${KEY_DISCOVERY_THREAD_NUM:16}")
+    public int keyDiscoveryThreadNum;
+
+    @Value("${KEY_DISCOVERY_PAGE_SIZE:10000}")
+    public int keyDiscoveryPageSize;
+
+    @Value("${KEY_MANIFEST_PATH:}")
+    public String keyManifestPath;
+
+    @Value("${PRESET_CHECKPOINT_PATH:}")
+    public String presetCheckpointPath;
+
     @Value("${PRESET_THREAD_NUM:100}")
     public int presetThreadNum;
 
     @Value("${THREAD_NUM:100}")
     public int threadNum;
 
+    @Value("${WORKER_ENGINE:PLATFORM}")
+    public WorkerEngineType workerEngine;
+
+    @Value("${WORKER_CARRIER_PARALLELISM:0}")
+    public int workerCarrierParallelism;
+
+    @Value("${MAX_IN_FLIGHT_PER_WORKER:1}")
+    public int maxInFlightPerWorker;
+
+    @Value("${RATE_LIMIT_SCOPE:THREAD}")
+    public RateLimitScope rateLimitScope;
+
     @Value("${THREAD_RATE_LIMIT:100}")
     public int threadRateLimit;
 
-    @Value("${THREAD_RATE_LIMIT_TIMEOUT_MS:2}")
-    public int threadRateLimitTimeoutMs;
+    @Value("${TABLE_RATE_LIMIT:1000}")
+    public int tableRateLimit;
+
+    @Value("${GLOBAL_RATE_LIMIT:10000}")
+    public int globalRateLimit;
+
+    @Value("${OPEN_LOOP_ENABLE:false}")
+    public boolean openLoopEnable;
+
+    @Value("${RANDOM_SEED:0}")
+    public long randomSeed;
+
+    @Value("${PAYLOAD_POOL_SIZE:16777216}")
+    public int payloadPoolSize;
+
+    @Value("${PAYLOAD_COMPRESSION_RATIO:1.0}")
+    public double payloadCompressionRatio;
+
+    @Value("${VERIFY_ENABLE:false}")
+    public boolean verifyEnable;
+
+    @Value("${KEY_DISTRIBUTION:UNIFORM}")
+    public KeyDistributionType keyDistribution;
+
+    @Value("${ZIPFIAN_CONSTANT:0.99}")
+    public double zipfianConstant;
+
+    @Value("${HOTSPOT_DATA_FRACTION:0.2}")
+    public double hotspotDataFraction;
+
+    @Value("${HOTSPOT_OPERATION_FRACTION:0.8}")
+    public double hotspotOperationFraction;
 
     @Value("${READ_RATE_PERCENT:0.25}")
     public double readRatePercent;
@@ -48,4 +105,28 @@ public class CommonConfig {
     @Value("${UPDATE_RATE_PERCENT:0.75}")
     public double updateRatePercent;
 
+    @Value("${INSERT_RATE_PERCENT:0.0}")
+    public double insertRatePercent;
+
+    @Value("${DELETE_RATE_PERCENT:0.0}")
+    public double deleteRatePercent;
+
+    @Value("${SCAN_RATE_PERCENT:0.0}")
+    public double scanRatePercent;
+
+    @Value("${SCAN_LENGTH:100}")
+    public int scanLength;
+
+    @Value("${SCAN_LENGTH_DISTRIBUTION:}")
+    public String scanLengthDistribution;
+
+    @Value("${MULTI_READ_RATE_PERCENT:0.0}")
+    public double multiReadRatePercent;
+
+    @Value("${MULTI_READ_SIZE:10}")
+    public int multiReadSize;
+
+    @Value("${MULTI_READ_SIZE_DISTRIBUTION:}")
+    public String multiReadSizeDistribution;
+
 }
@@ -39,6 +39,9 @@ public class QLCommonConfig extends CommonConfig{
     @Value("${FIELD_VALUE_LENGTH:1024}")
     public int fieldValueLength;
 
+    @Value("${FIELD_VALUE_LENGTH_DISTRIBUTION:}")
+    public String fieldValueLengthDistribution;
+
     @Value("${TABLE_NAME_PREFIX:perf_table}")
     public String tableNamePrefix;
 }
@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.random.RandomGenerator;
+
+/**
+ * Empirical distribution loaded from a file with one "size weight" pair per line, sampled with a binary search
+ * over the cumulative weights. Empty lines and lines starting with # are ignored.
+ */
+public class HistogramSizeDistribution implements SizeDistribution {
+
+    private final int[] sizes;
+
+    private final double[] cumulativeWeights;
+
+    public HistogramSizeDistribution(Path path) {
+        List<String> lines;
+        try {
+            lines = Files.readAllLines(path, StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new UncheckedIOException("read size histogram " + path + " fail", e);
+        }
+        List<Integer> sizeList = new ArrayList<>();
+        List<Double> weightList = new ArrayList<>();
+        for (String line : lines) {
+            String trimmed = line.trim();
+            if (trimmed.isEmpty() || trimmed.startsWith("#")) {
+                continue;
+            }
+            String[] parts = trimmed.split("[\\s,]+");
+            if (parts.length != 2) {
+                throw new IllegalArgumentException("invalid size histogram line: " + line);
+            }
+            sizeList.add(Integer.parseInt(parts[0]));
+            weightList.add(Double.parseDouble(parts[1]));
+        }
+        if (sizeList.isEmpty()) {
+            throw new IllegalArgumentException("size histogram " + path + " is empty");
+        }
+        this.sizes = new int[sizeList.size()];
+        this.cumulativeWeights = new double[sizeList.size()];
+        double total = 0;
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = sizeList.get(i);
+            total += weightList.get(i);
+            cumulativeWeights[i] = total;
+        }
+    }
+
+    @Override
+    public int next(RandomGenerator random) {
+        double target = random.nextDouble() * cumulativeWeights[cumulativeWeights.length - 1];
+        int idx = Arrays.binarySearch(cumulativeWeights, target);
+        if (idx < 0) {
+            idx = -idx - 1;
+        }
+        return sizes[Math.min(idx, sizes.length - 1)];
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * A hot set made of the first dataFraction of the keys receives operationFraction of the operations, keys are
+ * uniform inside the hot and the cold set.
+ */
+public class HotspotKeyChooser implements KeyChooser {
+
+    private final double dataFraction;
+
+    private final double operationFraction;
+
+    public HotspotKeyChooser(double dataFraction, double operationFraction) {
+        if (dataFraction < 0 || dataFraction > 1 || operationFraction < 0 || operationFraction > 1) {
+            throw new IllegalArgumentException("hotspot fractions must be in [0, 1]");
+        }
+        this.dataFraction = dataFraction;
+        this.operationFraction = operationFraction;
+    }
+
+    @Override
+    public long next(RandomGenerator random, long itemCount) {
+        long hotCount = Math.min(itemCount, Math.max(1, (long) (itemCount * dataFraction)));
+        if (hotCount == itemCount || random.nextDouble() < operationFraction) {
+            return random.nextLong(hotCount);
+        }
+        return hotCount + random.nextLong(itemCount - hotCount);
+    }
+
+}
@@ -0,0 +1,36 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Picks the index of the key an operation works on. Implementations are O(1) per sample and do not allocate.
+ */
+public interface KeyChooser {
+
+    /**
+     * @param random    random stream of the calling worker
+     * @param itemCount number of keys, must be positive
+     * @return an index in [0, itemCount)
+     */
+    long next(RandomGenerator random, long itemCount);
+
+}
@@ -0,0 +1,43 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Normal distribution truncated at one byte.
+ */
+public class NormalSizeDistribution implements SizeDistribution {
+
+    private final double mean;
+
+    private final double stddev;
+
+    public NormalSizeDistribution(double mean, double stddev) {
+        this.mean = mean;
+        this.stddev = stddev;
+    }
+
+    @Override
+    public int next(RandomGenerator random) {
+        return (int) Math.max(1, Math.round(random.nextGaussian(mean, stddev)));
+    }
+
+}
@@ -0,0 +1,55 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Zipfian popularity with the popular keys scattered over the key space instead of clustered at the lowest
+ * indexes, the zipfian rank is hashed with fnv-1a onto the index range.
+ */
+public class ScrambledZipfianKeyChooser implements KeyChooser {
+
+    private static final long FNV_OFFSET_BASIS_64 = 0xCBF29CE484222325L;
+
+    private static final long FNV_PRIME_64 = 1099511628211L;
+
+    private final ZipfianKeyChooser zipfian;
+
+    public ScrambledZipfianKeyChooser(double zipfianConstant) {
+        this.zipfian = new ZipfianKeyChooser(zipfianConstant);
+    }
+
+    @Override
+    public long next(RandomGenerator random, long itemCount) {
+        return Math.floorMod(fnvHash64(zipfian.next(random, itemCount)), itemCount);
+    }
+
+    static long fnvHash64(long value) {
+        long hash = FNV_OFFSET_BASIS_64;
+        for (int i = 0; i < 8; i++) {
+            hash ^= value & 0xFF;
+            hash *= FNV_PRIME_64;
+            value >>>= 8;
+        }
+        return hash;
+    }
+
+}
@@ -0,0 +1,70 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Parses size distribution specs, an empty spec is the constant default size.
+ * <ul>
+ *     <li>constant:SIZE</li>
+ *     <li>uniform:MIN:MAX</li>
+ *     <li>normal:MEAN:STDDEV</li>
+ *     <li>zipfian:MIN:MAX[:CONSTANT]</li>
+ *     <li>histogram:PATH</li>
+ * </ul>
+ */
+public class SizeDistributionFactory {
+
+    private static final double DEFAULT_ZIPFIAN_CONSTANT = 0.99;
+
+    private static final Map<String, SizeDistribution> DISTRIBUTIONS = new ConcurrentHashMap<>();
+
+    public static SizeDistribution create(String spec, int defaultSize) {
+        if (spec == null || spec.isBlank()) {
+            return new ConstantSizeDistribution(defaultSize);
+        }
+        return DISTRIBUTIONS.computeIfAbsent(spec.trim(), SizeDistributionFactory::parse);
+    }
+
+    private static SizeDistribution parse(String spec) {
+        String[] parts = spec.split(":", 2);
+        String type = parts[0].toLowerCase();
+        if (type.equals("histogram")) {
+            return new HistogramSizeDistribution(Path.of(parts[1]));
+        }
+        String[] args = parts.length > 1 ? parts[1].split(":") : new String[0];
+        try {
+            return switch (type) {
+                case "constant" -> new ConstantSizeDistribution(Integer.parseInt(args[0]));
+                case "uniform" -> new UniformSizeDistribution(Integer.parseInt(args[0]), Integer.parseInt(args[1]));
+                case "normal" -> new NormalSizeDistribution(Double.parseDouble(args[0]), Double.parseDouble(args[1]));
+                case "zipfian" -> new ZipfianSizeDistribution(Integer.parseInt(args[0]), Integer.parseInt(args[1]),
+                        args.length > 2 ? Double.parseDouble(args[2]) : DEFAULT_ZIPFIAN_CONSTANT);
+                default -> throw new IllegalArgumentException("unknown size distribution " + type);
+            };
+        } catch (ArrayIndexOutOfBoundsException e) {
+            throw new IllegalArgumentException("missing arguments in size distribution " + spec, e);
+        }
+    }
+
+}
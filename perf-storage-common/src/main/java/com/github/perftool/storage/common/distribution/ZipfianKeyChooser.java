@@ -0,0 +1,139 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+
+/**
+ * Zipfian distribution over the key indexes, index 0 being the most popular. The algorithm is the one of
+ * "Quickly Generating Billion-Record Synthetic Databases" by Gray et al., as used by ycsb. Its closed form only
+ * holds for a constant strictly between 0 and 1, other constants are rejected.
+ * <p>
+ * Computing zeta(n) is O(n), so it is shared by all choosers with the same constant and item count, counts are
+ * bucketed one percent apart. A count in a new bucket grows zeta incrementally from the bucket below it when
+ * that one is known, so a growing key space pays only for its new keys. Choosers over unrelated counts, like
+ * the key chooser and a zipfian size distribution, keep their own states.
+ */
+public class ZipfianKeyChooser implements KeyChooser {
+
+    private static final Map<ZetaKey, ZetaState> ZETA_STATES = new ConcurrentHashMap<>();
+
+    private static final double BUCKET_LOG_BASE = Math.log(1.01);
+
+    private final double theta;
+
+    private final double alpha;
+
+    private final double zeta2;
+
+    private final double secondItemBound;
+
+    private ZetaState state;
+
+    public ZipfianKeyChooser(double zipfianConstant) {
+        if (!(zipfianConstant > 0 && zipfianConstant < 1)) {
+            throw new IllegalArgumentException("zipfian constant must be between 0 and 1 exclusive, got "
+                    + zipfianConstant);
+        }
+        this.theta = zipfianConstant;
+        this.alpha = 1.0 / (1.0 - theta);
+        this.zeta2 = zeta(0, 2, theta, 0);
+        this.secondItemBound = 1.0 + Math.pow(0.5, theta);
+    }
+
+    @Override
+    public long next(RandomGenerator random, long itemCount) {
+        if (itemCount < 2) {
+            return 0;
+        }
+        ZetaState s = state(itemCount);
+        double u = random.nextDouble();
+        double uz = u * s.zetan;
+        long ret;
+        if (uz < 1.0) {
+            ret = 0;
+        } else if (uz < secondItemBound) {
+            ret = 1;
+        } else {
+            ret = (long) (s.itemCount * Math.pow(s.eta * u - s.eta + 1, alpha));
+        }
+        return ret < itemCount ? ret : ret % itemCount;
+    }
+
+    private ZetaState state(long itemCount) {
+        ZetaState s = state;
+        if (s == null || !s.covers(itemCount)) {
+            long bucket = (long) (Math.log(itemCount) / BUCKET_LOG_BASE);
+            ZetaKey key = new ZetaKey(theta, bucket);
+            s = ZETA_STATES.get(key);
+            if (s == null || !s.covers(itemCount)) {
+                // computed outside the map, choosers racing on a new bucket only repeat the work
+                ZetaState base = s != null && s.itemCount < itemCount
+                        ? s : ZETA_STATES.get(new ZetaKey(theta, bucket - 1));
+                s = newState(base, itemCount);
+                ZETA_STATES.put(key, s);
+            }
+            state = s;
+        }
+        return s;
+    }
+
+    private ZetaState newState(ZetaState old, long itemCount) {
+        double zetan = old != null && old.itemCount < itemCount
+                ? zeta(old.itemCount, itemCount, theta, old.zetan) : zeta(0, itemCount, theta, 0);
+        double eta = (1 - Math.pow(2.0 / itemCount, 1 - theta)) / (1 - zeta2 / zetan);
+        return new ZetaState(itemCount, zetan, eta);
+    }
+
+    private static double zeta(long from, long to, double theta, double initialSum) {
+        double sum = initialSum;
+        for (long i = from; i < to; i++) {
+            sum += 1 / Math.pow(i + 1, theta);
+        }
+        return sum;
+    }
+
+    private static final class ZetaState {
+
+        private final long itemCount;
+
+        private final double zetan;
+
+        private final double eta;
+
+        private ZetaState(long itemCount, double zetan, double eta) {
+            this.itemCount = itemCount;
+            this.zetan = zetan;
+            this.eta = eta;
+        }
+
+        private boolean covers(long count) {
+            long tolerance = itemCount / 100;
+            return count >= itemCount - tolerance && count <= itemCount + tolerance;
+        }
+
+    }
+
+    private record ZetaKey(double theta, long bucket) {
+    }
+
+}
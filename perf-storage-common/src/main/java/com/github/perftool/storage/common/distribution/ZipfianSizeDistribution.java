@@ -0,0 +1,46 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import java.util.random.RandomGenerator;
+
+/**
+ * Zipfian distribution over [min, max], small sizes being the most frequent ones.
+ */
+public class ZipfianSizeDistribution implements SizeDistribution {
+
+    private final int min;
+
+    private final long itemCount;
+
+    private final ZipfianKeyChooser zipfian;
+
+    public ZipfianSizeDistribution(int min, int max, double zipfianConstant) {
+        this.min = min;
+        this.itemCount = (long) max - min + 1;
+        this.zipfian = new ZipfianKeyChooser(zipfianConstant);
+    }
+
+    @Override
+    public int next(RandomGenerator random) {
+        return (int) (min + zipfian.next(random, itemCount));
+    }
+
+}
@@ -0,0 +1,50 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Semaphore;
+import java.util.function.Supplier;
+
+/**
+ * Bounds the number of asynchronous operations a worker keeps in flight, the worker blocks on submit until
+ * one of the pending operations completes.
+ */
+public class InFlightWindow {
+
+    private final Semaphore permits;
+
+    public InFlightWindow(int size) {
+        this.permits = new Semaphore(size);
+    }
+
+    public void submit(Supplier<? extends CompletionStage<?>> operation) {
+        permits.acquireUninterruptibly();
+        CompletionStage<?> stage;
+        try {
+            stage = operation.get();
+        } catch (Throwable e) {
+            permits.release();
+            throw e;
+        }
+        stage.whenComplete((result, throwable) -> permits.release());
+    }
+
+}
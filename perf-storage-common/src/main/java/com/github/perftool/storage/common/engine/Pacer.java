@@ -0,0 +1,81 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands out evenly spaced operation slots at a target rate, shared by any number of workers. A worker claims
+ * the next slot with a single atomic update and parks until the slot is due instead of polling.
+ */
+public class Pacer {
+
+    private final long intervalNanos;
+
+    private final AtomicLong nextSlotNanos;
+
+    /**
+     * @param ratePerSecond target operations per second, unlimited when not positive
+     */
+    public Pacer(double ratePerSecond) {
+        this.intervalNanos = ratePerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / ratePerSecond) : 0;
+        this.nextSlotNanos = new AtomicLong(System.nanoTime());
+    }
+
+    /**
+     * Claims the next slot and parks until it is due.
+     *
+     * @param catchUp issue slots that are already in the past, used by open-loop workers. Otherwise a
+     *                late slot is moved to now, so workers that fell behind do not burst.
+     * @return the intended start of the slot in {@link System#nanoTime()} terms
+     */
+    public long acquire(boolean catchUp) {
+        long slot = claim(catchUp);
+        long waitNanos;
+        while ((waitNanos = slot - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(waitNanos);
+        }
+        return slot;
+    }
+
+    /**
+     * Claims the next slot without waiting for it, the caller runs the slot once it is due.
+     *
+     * @see #acquire(boolean)
+     */
+    public long claim(boolean catchUp) {
+        if (intervalNanos == 0) {
+            return System.nanoTime();
+        }
+        if (catchUp) {
+            return nextSlotNanos.getAndAdd(intervalNanos);
+        }
+        long next;
+        long slot;
+        do {
+            next = nextSlotNanos.get();
+            slot = Math.max(next, System.nanoTime());
+        } while (!nextSlotNanos.compareAndSet(next, slot + intervalNanos));
+        return slot;
+    }
+
+}
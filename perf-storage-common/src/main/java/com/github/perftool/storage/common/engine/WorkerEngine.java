@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.config.CommonConfig;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the storage workers on one platform thread each, on a bounded pool of carrier threads or on virtual
+ * threads. CARRIER runs each worker one pacer slot at a time, a slot is scheduled on the pool once it is due
+ * and the worker is scheduled again for its next slot when the slot returned, so a paced worker holds no thread
+ * between its slots. Virtual threads are looked up reflectively because the project targets jdk 17, so
+ * VIRTUAL needs a jdk 21 runtime and fails when the running jvm does not provide them. The engine also owns
+ * the pacers, so workers of a table or of the whole process can share one rate budget.
+ */
+@Slf4j
+public class WorkerEngine {
+
+    private static final String WORKER_NAME_PREFIX = "perf-storage-worker-";
+
+    private static final String DEFAULT_RATE_GROUP = "default";
+
+    private final CommonConfig commonConfig;
+
+    private final ExecutorService executor;
+
+    /**
+     * the carrier pool when the engine is CARRIER, null otherwise.
+     */
+    private final ScheduledExecutorService carriers;
+
+    private final Map<String, Pacer> tablePacers = new ConcurrentHashMap<>();
+
+    private final Pacer globalPacer;
+
+    /**
+     * workers are submitted in a fixed order by the boot loops, so with RANDOM_SEED every worker gets the same
+     * stream in every run. That replays the key and operation choices of each worker only for synchronous
+     * closed-loop workers on a fixed key space. Pipelined callbacks and the preset pools draw from thread local
+     * randoms, and a live key space is shared with the other workers, so there the sequence depends on timing.
+     */
+    private final SplittableRandom masterRandom;
+
+    public WorkerEngine(CommonConfig commonConfig) {
+        this.commonConfig = commonConfig;
+        this.masterRandom = commonConfig.randomSeed == 0
+                ? new SplittableRandom() : new SplittableRandom(commonConfig.randomSeed);
+        this.globalPacer = new Pacer(commonConfig.globalRateLimit);
+        switch (commonConfig.workerEngine) {
+            case CARRIER -> {
+                this.carriers = createCarrierExecutor(commonConfig.workerCarrierParallelism);
+                this.executor = carriers;
+            }
+            case VIRTUAL -> {
+                this.carriers = null;
+                this.executor = createVirtualExecutor();
+            }
+            default -> {
+                this.carriers = null;
+                this.executor = createPlatformExecutor();
+            }
+        }
+    }
+
+    public void submit(AbstractStorageThread worker) {
+        this.submit(worker, DEFAULT_RATE_GROUP);
+    }
+
+    /**
+     * @param table the rate group of the worker when the rate limit scope is TABLE
+     */
+    public synchronized void submit(AbstractStorageThread worker, String table) {
+        worker.useRandom(masterRandom.split());
+        switch (commonConfig.rateLimitScope) {
+            case TABLE -> worker.usePacer(tablePacers.computeIfAbsent(table,
+                    t -> new Pacer(commonConfig.tableRateLimit)));
+            case GLOBAL -> worker.usePacer(globalPacer);
+            default -> {
+            }
+        }
+        if (carriers != null) {
+            scheduleSlot(worker);
+        } else {
+            executor.execute(worker);
+        }
+    }
+
+    private void scheduleSlot(AbstractStorageThread worker) {
+        long slotNanos = worker.claimSlot();
+        carriers.schedule(() -> {
+            try {
+                worker.runSlot(slotNanos);
+            } finally {
+                scheduleSlot(worker);
+            }
+        }, slotNanos - System.nanoTime(), TimeUnit.NANOSECONDS);
+    }
+
+    private static ExecutorService createPlatformExecutor() {
+        return Executors.newCachedThreadPool(new ThreadFactoryBuilder()
+                .setNameFormat(WORKER_NAME_PREFIX + "%d")
+                .build());
+    }
+
+    /**
+     * @param parallelism carrier threads, the number of processors when not positive
+     */
+    private static ScheduledExecutorService createCarrierExecutor(int parallelism) {
+        int threads = parallelism > 0 ? parallelism : Runtime.getRuntime().availableProcessors();
+        log.info("run workers on {} carrier threads", threads);
+        return Executors.newScheduledThreadPool(threads, new ThreadFactoryBuilder()
+                .setNameFormat(WORKER_NAME_PREFIX + "carrier-%d")
+                .build());
+    }
+
+    /**
+     * the jdk reads the scheduler settings once at startup, so the carrier parallelism of virtual threads is
+     * passed as jvm flags by the start script instead of set here.
+     */
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            Class<?> builderClass = Class.forName("java.lang.Thread$Builder");
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            builder = builderClass.getMethod("name", String.class, long.class)
+                    .invoke(builder, WORKER_NAME_PREFIX, 0L);
+            ThreadFactory threadFactory = (ThreadFactory) builderClass.getMethod("factory").invoke(builder);
+            log.info("run workers on virtual threads, carrier parallelism {}",
+                    System.getProperty("jdk.virtualThreadScheduler.parallelism", "default"));
+            return (ExecutorService) Executors.class.getMethod("newThreadPerTaskExecutor", ThreadFactory.class)
+                    .invoke(null, threadFactory);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("WORKER_ENGINE VIRTUAL needs virtual threads, jvm "
+                    + System.getProperty("java.version") + " has none, run on jdk 21 or use PLATFORM", e);
+        }
+    }
+
+}
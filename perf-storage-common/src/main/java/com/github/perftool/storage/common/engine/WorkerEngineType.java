@@ -0,0 +1,39 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+public enum WorkerEngineType {
+
+    /**
+     * one platform thread per worker.
+     */
+    PLATFORM,
+    /**
+     * WORKER_CARRIER_PARALLELISM carrier threads shared by all the workers, each worker holding a carrier only
+     * while one of its slots runs. Runs on jdk 17, the operations of a slot still block their carrier.
+     */
+    CARRIER,
+    /**
+     * one virtual thread per worker, needs a jdk 21 runtime, the shipped jdk 17 image does not have virtual
+     * threads and the engine refuses to start there. The start script passes WORKER_CARRIER_PARALLELISM to the
+     * virtual thread scheduler.
+     */
+    VIRTUAL,
+}
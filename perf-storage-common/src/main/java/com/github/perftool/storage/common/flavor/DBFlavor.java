@@ -33,6 +33,16 @@ public abstract class DBFlavor {
 
     public abstract String updateStatement(String tableName);
 
+    /**
+     * reads at most the bound count of rows from the bound key on, in the order of the storage.
+     */
+    public abstract String scanStatement(String tableName);
+
+    /**
+     * reads the rows of {@code keys} bound keys in one statement.
+     */
+    public abstract String multiReadStatement(String tableName, int keys);
+
     public abstract String createDBStatement(String dbName);
 
     public abstract String createTableStatement(String tableName);
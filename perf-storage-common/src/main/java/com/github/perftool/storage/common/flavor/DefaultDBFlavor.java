@@ -33,26 +33,58 @@ public class DefaultDBFlavor extends DBFlavor {
 
     @Override
     public String insertStatement(String tableName) {
+        return insertStatement(tableName, 1);
+    }
+
+    /**
+     * a multi-row INSERT of {@code rows} rows.
+     */
+    public String insertStatement(String tableName, int rows) {
         StringBuilder insertSql = new StringBuilder("INSERT INTO ");
         insertSql.append(tableName);
-        insertSql.append(" (id,");
-        for (int i = 1; i < qlCommonConfig.fieldCount - 1; i++) {
-            insertSql.append("field").append(i).append(", ");
-        }
-        insertSql.append("field").append(qlCommonConfig.fieldCount - 1).append(")");
-        insertSql.append(" VALUES(?");
-        for (int i = 1; i < qlCommonConfig.fieldCount; i++) {
-            insertSql.append(",?");
+        insertSql.append(" (").append(columnList()).append(")");
+        insertSql.append(" VALUES");
+        for (int row = 0; row < rows; row++) {
+            insertSql.append(row == 0 ? "(?" : ",(?");
+            for (int i = 1; i < qlCommonConfig.fieldCount; i++) {
+                insertSql.append(",?");
+            }
+            insertSql.append(")");
         }
-        insertSql.append(")");
         return insertSql.toString();
     }
 
+    protected String columnList() {
+        StringBuilder columns = new StringBuilder("id,");
+        for (int i = 1; i < qlCommonConfig.fieldCount - 1; i++) {
+            columns.append("field").append(i).append(", ");
+        }
+        columns.append("field").append(qlCommonConfig.fieldCount - 1);
+        return columns.toString();
+    }
+
     @Override
     public String readStatement(String tableName) {
         return "SELECT * FROM " + tableName + " where id = ?";
     }
 
+    @Override
+    public String scanStatement(String tableName) {
+        return "SELECT * FROM " + tableName + " WHERE id >= ? ORDER BY id LIMIT ?";
+    }
+
+    @Override
+    public String multiReadStatement(String tableName, int keys) {
+        StringBuilder readSql = new StringBuilder("SELECT * FROM ");
+        readSql.append(tableName);
+        readSql.append(" WHERE id IN (?");
+        for (int i = 1; i < keys; i++) {
+            readSql.append(",?");
+        }
+        readSql.append(")");
+        return readSql.toString();
+    }
+
     @Override
     public String deleteStatement(String tableName) {
         StringBuilder deleteSql = new StringBuilder("DELETE FROM ");
@@ -0,0 +1,47 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+/**
+ * The keys of {@code first} followed by the keys of {@code second}.
+ */
+public class CompositeKeySpace implements KeySpace {
+
+    private final KeySpace first;
+
+    private final KeySpace second;
+
+    public CompositeKeySpace(KeySpace first, KeySpace second) {
+        this.first = first;
+        this.second = second;
+    }
+
+    @Override
+    public long size() {
+        return first.size() + second.size();
+    }
+
+    @Override
+    public String key(long index) {
+        long firstSize = first.size();
+        return index < firstSize ? first.key(index) : second.key(index - firstSize);
+    }
+
+}
@@ -0,0 +1,104 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.utils.IDUtils;
+
+/**
+ * Generated keys, the key of an index is a 32 char hex string derived from the seed and the index, so the
+ * space holds no per key state. The high half is a bijective mix of the index, which keeps the keys of one
+ * seed distinct. Generating with the same seed and an offset past the highest index already stored continues
+ * the sequence of a previous run, {@link #indexOf(String)} finds that index from the stored keys.
+ */
+public class IndexKeySpace implements KeySpace {
+
+    private static final long GOLDEN_GAMMA = 0x9E3779B97F4A7C15L;
+
+    private static final long GOLDEN_GAMMA_INVERSE = inverse(GOLDEN_GAMMA);
+
+    private static final long MIX_FIRST_INVERSE = inverse(0xBF58476D1CE4E5B9L);
+
+    private static final long MIX_SECOND_INVERSE = inverse(0x94D049BB133111EBL);
+
+    private final long seed;
+
+    private final long offset;
+
+    private final long size;
+
+    public IndexKeySpace(long seed, long offset, long size) {
+        this.seed = seed;
+        this.offset = offset;
+        this.size = size;
+    }
+
+    @Override
+    public long size() {
+        return size;
+    }
+
+    @Override
+    public String key(long index) {
+        long high = mix64(seed + (offset + index) * GOLDEN_GAMMA);
+        long low = mix64(high ^ ~seed);
+        return IDUtils.formatHexId(high, low);
+    }
+
+    /**
+     * inverts the key derivation, so a scanned key can be told apart from the keys of this space without
+     * generating them.
+     *
+     * @return the index of the key in this space, -1 when the key does not belong to it
+     */
+    public long indexOf(String key) {
+        if (!IDUtils.isHexId(key)) {
+            return -1;
+        }
+        long index = (unmix64(IDUtils.parseHexIdHigh(key)) - seed) * GOLDEN_GAMMA_INVERSE - offset;
+        if (index < 0 || index >= size || !key(index).equals(key)) {
+            return -1;
+        }
+        return index;
+    }
+
+    private static long mix64(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    private static long unmix64(long z) {
+        z = (z ^ (z >>> 31) ^ (z >>> 62)) * MIX_SECOND_INVERSE;
+        z = (z ^ (z >>> 27) ^ (z >>> 54)) * MIX_FIRST_INVERSE;
+        return z ^ (z >>> 30) ^ (z >>> 60);
+    }
+
+    /**
+     * multiplicative inverse of an odd number modulo 2^64, each newton step doubles the correct low bits.
+     */
+    private static long inverse(long odd) {
+        long x = odd;
+        for (int i = 0; i < 5; i++) {
+            x *= 2 - odd * x;
+        }
+        return x;
+    }
+
+}
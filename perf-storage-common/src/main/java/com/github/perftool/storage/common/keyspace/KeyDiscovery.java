@@ -0,0 +1,106 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Runs the range scanners of a backend in parallel and streams the keys into one {@link StoredKeySpace}.
+ * Every discovery thread takes the next range and appends its pages to a key space of its own, the thread key
+ * spaces are moved into the result once every range is scanned. A range that fails is scanned again, a range
+ * that fails every attempt fails the discovery, a partial key space would silently shrink the dataset the
+ * workload runs on.
+ */
+@Slf4j
+public class KeyDiscovery {
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    /**
+     * @throws IllegalStateException when a range fails {@value #MAX_ATTEMPTS} times or the discovery is interrupted
+     */
+    public static StoredKeySpace discover(String source, int parallelism, List<KeyRangeScanner> scanners) {
+        long start = System.currentTimeMillis();
+        StoredKeySpace keys = new StoredKeySpace();
+        int threads = Math.max(1, Math.min(parallelism, scanners.size()));
+        ExecutorService threadPool = Executors.newFixedThreadPool(threads,
+                new ThreadFactoryBuilder().setNameFormat("perf-storage-discovery-%d").build());
+        try {
+            AtomicInteger nextRange = new AtomicInteger();
+            List<Future<StoredKeySpace>> futures = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                futures.add(threadPool.submit(() -> {
+                    StoredKeySpace threadKeys = new StoredKeySpace();
+                    for (int range = nextRange.getAndIncrement(); range < scanners.size();
+                         range = nextRange.getAndIncrement()) {
+                        scan(source, scanners.get(range), threadKeys);
+                    }
+                    return threadKeys;
+                }));
+            }
+            for (Future<StoredKeySpace> future : futures) {
+                keys.moveFrom(future.get());
+            }
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("discover " + source + " keys fail", e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("discover " + source + " keys interrupted", e);
+        } finally {
+            threadPool.shutdownNow();
+        }
+        long costMs = Math.max(1, System.currentTimeMillis() - start);
+        log.info("discovered {} {} keys in {} ranges, cost {} ms, {} keys/s", keys.size(), source,
+                scanners.size(), costMs, keys.size() * 1000 / costMs);
+        return keys;
+    }
+
+    /**
+     * appends the range to the key space of the thread, the keys of a failed attempt are dropped before the range
+     * is scanned again so they never reach the result twice.
+     */
+    private static void scan(String source, KeyRangeScanner scanner, StoredKeySpace keys) throws Exception {
+        StoredKeySpace.Mark mark = keys.mark();
+        for (int attempt = 1; ; attempt++) {
+            try {
+                scanner.scan(keys);
+                return;
+            } catch (InterruptedException e) {
+                throw e;
+            } catch (Exception e) {
+                keys.truncate(mark);
+                if (attempt >= MAX_ATTEMPTS) {
+                    throw e;
+                }
+                log.warn("discover {} key range fail, attempt {} of {}. ", source, attempt, MAX_ATTEMPTS, e);
+            }
+        }
+    }
+
+}
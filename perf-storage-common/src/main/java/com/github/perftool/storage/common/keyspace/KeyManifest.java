@@ -0,0 +1,422 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.utils.IDUtils;
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Local, memory-mapped record of the keys stored in the backend, so a restart can skip the backend scan.
+ * Record i holds the key of key space index i as two longs, 16 bytes per key, an all zero record marks an
+ * index without a key. The file is mapped in segments of up to 1 GB, a segment is mapped only as large as
+ * the records in it need and doubles when it fills, so a small dataset keeps a small file.
+ * <p>
+ * The header carries a fingerprint of the backend target, a manifest written against another target is
+ * reset. The fingerprint says nothing about the data, callers check a {@link #sample(int)} of the keys
+ * against the backend and {@link #reset()} a manifest the backend no longer matches. Keys outside the
+ * 32 char hex form cannot be recorded, the manifest then resets itself and the next boot scans the backend
+ * again.
+ * <p>
+ * The header also remembers where the seeded key sequence continues, so a restart generates new keys past
+ * the recorded ones without looking every key up in the sequence.
+ * <p>
+ * Records are written without a lock, the caller owns an index between its put and its clear. The counts are
+ * kept in memory and folded into the header by {@link #force()}, the header is marked dirty from the first
+ * change after a force on, and a manifest opened dirty recounts its records.
+ */
+@Slf4j
+public class KeyManifest {
+
+    private static final long MAGIC = 0x5045524B45595331L;
+
+    private static final int VERSION = 1;
+
+    private static final int MAGIC_OFFSET = 0;
+
+    private static final int VERSION_OFFSET = 8;
+
+    private static final int FINGERPRINT_OFFSET = 16;
+
+    private static final int COUNT_OFFSET = 24;
+
+    private static final int LIVE_OFFSET = 32;
+
+    private static final int SEQUENCE_SEED_OFFSET = 40;
+
+    private static final int SEQUENCE_ORIGIN_OFFSET = 48;
+
+    private static final int DIRTY_OFFSET = 56;
+
+    private static final int HEADER_SIZE = 64;
+
+    private static final int RECORD_SIZE = 16;
+
+    private static final int SEGMENT_SHIFT = 30;
+
+    private static final long SEGMENT_SIZE = 1L << SEGMENT_SHIFT;
+
+    private static final int MAX_SEGMENTS = 1024;
+
+    private static final long MIN_MAP_SIZE = 1L << 16;
+
+    private final Path path;
+
+    private final FileChannel channel;
+
+    private final AtomicReferenceArray<MappedByteBuffer> segments = new AtomicReferenceArray<>(MAX_SEGMENTS);
+
+    private final MappedByteBuffer header;
+
+    /**
+     * the highest recorded index plus one.
+     */
+    private final AtomicLong count = new AtomicLong();
+
+    private final LongAdder live = new LongAdder();
+
+    /**
+     * whether the header counts are behind the records, set by the first change after a {@link #force()}.
+     */
+    private volatile boolean dirty;
+
+    private volatile boolean usable = true;
+
+    private KeyManifest(Path path, FileChannel channel) throws IOException {
+        this.path = path;
+        this.channel = channel;
+        this.header = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE);
+    }
+
+    /**
+     * opens the manifest at the path, resetting it when it is missing, corrupt or belongs to another target.
+     *
+     * @param identity description of the backend target the keys are stored in
+     */
+    public static KeyManifest open(Path path, String identity) throws IOException {
+        long fingerprint = Hashing.murmur3_128().hashString(identity, StandardCharsets.UTF_8).asLong();
+        FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean valid = isValid(channel, fingerprint);
+        if (!valid) {
+            // drop the records of the previous manifest before mapping, stale records would read as keys
+            channel.truncate(0);
+        }
+        KeyManifest manifest = new KeyManifest(path, channel);
+        manifest.load(valid, fingerprint);
+        return manifest;
+    }
+
+    private static boolean isValid(FileChannel channel, long fingerprint) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, buffer.position()) <= 0) {
+                return false;
+            }
+        }
+        long storedCount = buffer.getLong(COUNT_OFFSET);
+        return buffer.getLong(MAGIC_OFFSET) == MAGIC
+                && buffer.getInt(VERSION_OFFSET) == VERSION
+                && buffer.getLong(FINGERPRINT_OFFSET) == fingerprint
+                && storedCount >= 0 && HEADER_SIZE + storedCount * RECORD_SIZE <= channel.size();
+    }
+
+    private void load(boolean valid, long fingerprint) throws IOException {
+        if (valid && header.getInt(DIRTY_OFFSET) != 0) {
+            recount();
+            force();
+            log.info("key manifest {} was not closed, recounted {} keys, {} live", path, count, live);
+            return;
+        }
+        if (valid) {
+            count.set(header.getLong(COUNT_OFFSET));
+            live.add(header.getLong(LIVE_OFFSET));
+            log.info("key manifest {} holds {} keys, {} live", path, count, live);
+            return;
+        }
+        log.info("key manifest {} does not match the target, starting a new one", path);
+        header.putLong(MAGIC_OFFSET, MAGIC);
+        header.putInt(VERSION_OFFSET, VERSION);
+        header.putLong(FINGERPRINT_OFFSET, fingerprint);
+        writeCounts();
+    }
+
+    /**
+     * counts the records of every mapped byte of the file, the header counts of a run that did not stop cleanly
+     * miss the changes since its last force.
+     */
+    private void recount() throws IOException {
+        long records = (channel.size() - HEADER_SIZE) / RECORD_SIZE;
+        for (long i = 0; i < records; i++) {
+            if (!isEmpty(i)) {
+                count.set(i + 1);
+                live.increment();
+            }
+        }
+    }
+
+    /**
+     * number of indexes recorded, live or not.
+     */
+    public long size() {
+        return count.get();
+    }
+
+    public long liveCount() {
+        return live.sum();
+    }
+
+    /**
+     * whether every recorded index holds a key, when not {@link #isEmpty(long)} tells the holes.
+     */
+    public boolean isDense() {
+        return live.sum() == count.get();
+    }
+
+    public boolean isUsable() {
+        return usable;
+    }
+
+    public boolean isEmpty(long index) {
+        MappedByteBuffer segment = segmentOf(index);
+        int offset = recordOffset(index);
+        return segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0;
+    }
+
+    /**
+     * the recorded keys as a key space, only valid for indexes that are not {@link #isEmpty(long)}.
+     */
+    public KeySpace keys() {
+        long size = size();
+        return new KeySpace() {
+            @Override
+            public long size() {
+                return size;
+            }
+
+            @Override
+            public String key(long index) {
+                MappedByteBuffer segment = segmentOf(index);
+                int offset = recordOffset(index);
+                return IDUtils.formatHexId(segment.getLong(offset), segment.getLong(offset + 8));
+            }
+        };
+    }
+
+    /**
+     * up to {@code limit} recorded keys, spread evenly over the recorded indexes.
+     */
+    public List<String> sample(int limit) {
+        long size = size();
+        KeySpace recorded = keys();
+        List<String> keys = new ArrayList<>(limit);
+        long step = Math.max(1, size / limit);
+        for (long i = 0; i < size && keys.size() < limit; i += step) {
+            if (!isEmpty(i)) {
+                keys.add(recorded.key(i));
+            }
+        }
+        return keys;
+    }
+
+    /**
+     * forgets every recorded key, the records are zeroed so indexes recorded again later do not read stale keys.
+     */
+    public void reset() {
+        for (long i = 0; i < count.get(); i++) {
+            MappedByteBuffer segment = segmentOf(i);
+            int offset = recordOffset(i);
+            segment.putLong(offset, 0);
+            segment.putLong(offset + 8, 0);
+        }
+        count.set(0);
+        live.reset();
+        header.putLong(SEQUENCE_SEED_OFFSET, 0);
+        force();
+    }
+
+    /**
+     * remembers where the key sequence of the seed continues: the key recorded at index {@link #size()} is at
+     * {@code next} in the sequence and the keys recorded after it follow the sequence.
+     */
+    public void setNextSequenceIndex(long seed, long next) {
+        header.putLong(SEQUENCE_SEED_OFFSET, seed);
+        header.putLong(SEQUENCE_ORIGIN_OFFSET, next - count.get());
+    }
+
+    /**
+     * @return the first index of the key sequence of the seed past every recorded key, -1 when the manifest
+     * does not know the sequence of the seed
+     */
+    public long nextSequenceIndex(long seed) {
+        if (seed == 0 || header.getLong(SEQUENCE_SEED_OFFSET) != seed) {
+            return -1;
+        }
+        return count.get() + header.getLong(SEQUENCE_ORIGIN_OFFSET);
+    }
+
+    public void put(long index, String key) {
+        if (!usable) {
+            return;
+        }
+        if (!IDUtils.isHexId(key)) {
+            disable(key);
+            return;
+        }
+        MappedByteBuffer segment = segmentOf(index);
+        int offset = recordOffset(index);
+        boolean wasEmpty = index >= count.get()
+                || (segment.getLong(offset) == 0 && segment.getLong(offset + 8) == 0);
+        segment.putLong(offset, IDUtils.parseHexIdHigh(key));
+        segment.putLong(offset + 8, IDUtils.parseHexIdLow(key));
+        if (index >= count.get()) {
+            count.accumulateAndGet(index + 1, Math::max);
+        }
+        if (wasEmpty) {
+            live.increment();
+        }
+        markDirty();
+    }
+
+    private synchronized void disable(String key) {
+        if (!usable) {
+            return;
+        }
+        log.warn("key {} can not be recorded in the key manifest, disable it", key);
+        usable = false;
+        count.set(0);
+        live.reset();
+        header.putLong(SEQUENCE_SEED_OFFSET, 0);
+        writeCounts();
+    }
+
+    /**
+     * records the keys of the key space at the indexes starting from {@code from} and flushes the file.
+     */
+    public void putAll(long from, KeySpace keys) {
+        for (long i = 0; i < keys.size() && usable; i++) {
+            put(from + i, keys.key(i));
+        }
+        force();
+    }
+
+    public void clear(long index) {
+        if (!usable || index >= count.get() || isEmpty(index)) {
+            return;
+        }
+        MappedByteBuffer segment = segmentOf(index);
+        int offset = recordOffset(index);
+        segment.putLong(offset, 0);
+        segment.putLong(offset + 8, 0);
+        live.decrement();
+        markDirty();
+    }
+
+    /**
+     * folds the counts into the header and flushes the file, the header is clean unless a put or clear ran
+     * meanwhile.
+     */
+    public void force() {
+        synchronized (this) {
+            dirty = false;
+        }
+        for (int i = 0; i < MAX_SEGMENTS; i++) {
+            MappedByteBuffer segment = segments.get(i);
+            if (segment != null) {
+                segment.force();
+            }
+        }
+        synchronized (this) {
+            writeCounts();
+            if (!dirty) {
+                header.putInt(DIRTY_OFFSET, 0);
+            }
+        }
+        header.force();
+    }
+
+    /**
+     * a change that read the flag set was counted before the flag was cleared, so the fold of the next
+     * {@link #force()} covers it.
+     */
+    private void markDirty() {
+        if (dirty) {
+            return;
+        }
+        synchronized (this) {
+            if (!dirty) {
+                dirty = true;
+                header.putInt(DIRTY_OFFSET, 1);
+            }
+        }
+    }
+
+    private void writeCounts() {
+        header.putLong(COUNT_OFFSET, count.get());
+        header.putLong(LIVE_OFFSET, live.sum());
+    }
+
+    private static int recordOffset(long index) {
+        return (int) ((HEADER_SIZE + index * RECORD_SIZE) & (SEGMENT_SIZE - 1));
+    }
+
+    private MappedByteBuffer segmentOf(long index) {
+        long end = HEADER_SIZE + (index + 1) * RECORD_SIZE;
+        int idx = (int) ((end - 1) >>> SEGMENT_SHIFT);
+        try {
+            return segment(idx, end - idx * SEGMENT_SIZE);
+        } catch (IOException e) {
+            throw new IllegalStateException("map key manifest " + path + " fail", e);
+        }
+    }
+
+    /**
+     * maps segment {@code idx} with at least {@code used} bytes, a segment that is too small is mapped again
+     * at the next power of two. Buffers of the older mapping stay valid, they share the pages of the file.
+     */
+    private MappedByteBuffer segment(int idx, long used) throws IOException {
+        MappedByteBuffer segment = segments.get(idx);
+        if (segment == null || segment.capacity() < used) {
+            synchronized (segments) {
+                segment = segments.get(idx);
+                if (segment == null || segment.capacity() < used) {
+                    long size = Math.min(SEGMENT_SIZE, Math.max(MIN_MAP_SIZE, Long.highestOneBit(used - 1) << 1));
+                    segment = channel.map(FileChannel.MapMode.READ_WRITE, idx * SEGMENT_SIZE, size);
+                    segments.set(idx, segment);
+                }
+            }
+        }
+        return segment;
+    }
+
+}
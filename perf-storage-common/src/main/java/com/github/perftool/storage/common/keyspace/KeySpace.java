@@ -0,0 +1,67 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Keys the workers operate on, addressed by a dense index so that a key chooser sample maps to a key without
+ * holding every key as a String.
+ */
+public interface KeySpace {
+
+    long size();
+
+    /**
+     * @param index an index in [0, size())
+     */
+    String key(long index);
+
+    default void forEach(Consumer<String> action) {
+        for (long i = 0; i < size(); i++) {
+            action.accept(key(i));
+        }
+    }
+
+    /**
+     * splits the key space into at most {@code parts} contiguous views of near equal size.
+     */
+    default List<KeySpace> partition(int parts) {
+        long size = size();
+        int count = (int) Math.max(1, Math.min(parts, size));
+        List<KeySpace> result = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            long from = size * i / count;
+            long to = size * (i + 1) / count;
+            result.add(slice(from, to - from));
+        }
+        return result;
+    }
+
+    /**
+     * @return a view of {@code size} keys starting at index {@code from}
+     */
+    default KeySpace slice(long from, long size) {
+        return new SliceKeySpace(this, from, size);
+    }
+
+}
@@ -0,0 +1,243 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.distribution.KeyChooser;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.random.RandomGenerator;
+
+/**
+ * Key space shared by all workers of a churn workload. Inserts allocate new indexes past the high water mark,
+ * deletes retire live indexes and reads sample live indexes only. Liveness is one bit per index in lazily
+ * allocated chunks of atomic words, every transition is a single CAS so workers never lock.
+ * <p>
+ * An allocated index stays invisible to readers until it is published, which the worker does once the insert
+ * returned, and a retired index is hidden before the delete is issued.
+ */
+public class LiveKeySpace implements KeySpace {
+
+    private static final int CHUNK_WORD_SHIFT = 16;
+
+    private static final int CHUNK_WORDS = 1 << CHUNK_WORD_SHIFT;
+
+    private static final int MAX_CHUNKS = 1 << 16;
+
+    private static final long CAPACITY = (long) MAX_CHUNKS * CHUNK_WORDS * Long.SIZE;
+
+    /**
+     * words scanned around a sampled index that turned out dead before sampling again.
+     */
+    private static final int PROBE_WORDS = 16;
+
+    private static final int MAX_SAMPLES = 8;
+
+    private final KeySpace keys;
+
+    private final AtomicReferenceArray<AtomicLongArray> chunks = new AtomicReferenceArray<>(MAX_CHUNKS);
+
+    private final AtomicLong highWater;
+
+    private final LongAdder liveCount = new LongAdder();
+
+    /**
+     * records published and retired keys for the next boot, null when KEY_MANIFEST_PATH is not set.
+     */
+    private volatile KeyManifest manifest;
+
+    /**
+     * @param keys      unbounded key space the indexes are formatted with
+     * @param liveCount number of leading indexes that already exist in the storage
+     */
+    public LiveKeySpace(KeySpace keys, long liveCount) {
+        if (liveCount > CAPACITY) {
+            throw new IllegalArgumentException("live key space holds at most " + CAPACITY + " keys");
+        }
+        this.keys = keys;
+        this.highWater = new AtomicLong(liveCount);
+        for (long word = 0; word < (liveCount + Long.SIZE - 1) / Long.SIZE; word++) {
+            long bits = Math.min(Long.SIZE, liveCount - word * Long.SIZE);
+            chunk(word).set(wordOffset(word), bits == Long.SIZE ? -1L : (1L << bits) - 1);
+        }
+        this.liveCount.add(liveCount);
+    }
+
+    /**
+     * the high water mark, indexes below it are live or retired.
+     */
+    @Override
+    public long size() {
+        return highWater.get();
+    }
+
+    @Override
+    public String key(long index) {
+        return keys.key(index);
+    }
+
+    public long liveCount() {
+        return liveCount.sum();
+    }
+
+    public void useManifest(KeyManifest manifest) {
+        this.manifest = manifest;
+    }
+
+    /**
+     * marks an index below the initial live count as dead, used for indexes a restored manifest has no key
+     * for.
+     */
+    public void discard(long index) {
+        long mask = 1L << index;
+        long previous = chunk(index >>> 6).getAndAccumulate(wordOffset(index >>> 6), ~mask, (a, b) -> a & b);
+        if ((previous & mask) != 0) {
+            liveCount.decrement();
+        }
+    }
+
+    /**
+     * reserves a fresh index, it is not sampled until {@link #publish(long)}.
+     */
+    public long allocate() {
+        long index = highWater.getAndIncrement();
+        if (index >= CAPACITY) {
+            highWater.decrementAndGet();
+            throw new IllegalStateException("live key space exhausted at " + CAPACITY + " keys");
+        }
+        return index;
+    }
+
+    /**
+     * makes the index visible to readers, its manifest record is written first so a worker retiring it right
+     * away clears a record that is already there.
+     */
+    public void publish(long index) {
+        KeyManifest keyManifest = manifest;
+        if (keyManifest != null) {
+            keyManifest.put(index, key(index));
+        }
+        long mask = 1L << index;
+        long previous = chunk(index >>> 6).getAndAccumulate(wordOffset(index >>> 6), mask, (a, b) -> a | b);
+        if ((previous & mask) == 0) {
+            liveCount.increment();
+        }
+    }
+
+    /**
+     * picks a live index with the given chooser and retires it, the caller owns the delete of its key.
+     *
+     * @return the retired index, -1 when no live index was found
+     */
+    public long retire(RandomGenerator random, KeyChooser chooser) {
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            long index = sampleLive(random, chooser);
+            if (index < 0) {
+                return -1;
+            }
+            long mask = 1L << index;
+            long previous = chunk(index >>> 6).getAndAccumulate(wordOffset(index >>> 6), ~mask, (a, b) -> a & b);
+            if ((previous & mask) != 0) {
+                liveCount.decrement();
+                KeyManifest keyManifest = manifest;
+                if (keyManifest != null) {
+                    keyManifest.clear(index);
+                }
+                return index;
+            }
+            // another worker retired it first
+        }
+        return -1;
+    }
+
+    /**
+     * samples an index with the chooser and moves to the next live index when it is dead, or to the previous
+     * live index when nothing lives above it, so the skew of the chooser is kept while deletes thin out the key
+     * space. When the key space got too sparse for the probes the whole bitmap is scanned from the last sample.
+     *
+     * @return a live index, -1 when no live index was found
+     */
+    public long sampleLive(RandomGenerator random, KeyChooser chooser) {
+        long limit = highWater.get();
+        if (limit == 0 || liveCount.sum() <= 0) {
+            return -1;
+        }
+        long index = 0;
+        for (int i = 0; i < MAX_SAMPLES; i++) {
+            index = chooser.next(random, limit);
+            long found = nextLive(index, limit, PROBE_WORDS);
+            if (found >= 0) {
+                return found;
+            }
+        }
+        return nextLive(index, limit, ((limit - 1) >>> 6) + 1);
+    }
+
+    private long nextLive(long index, long limit, long maxWords) {
+        long first = index >>> 6;
+        long lastWord = (limit - 1) >>> 6;
+        long word = first;
+        long bits = wordAt(word) & (-1L << index);
+        for (long i = 0; i <= maxWords; i++) {
+            if (bits != 0) {
+                return (word << 6) + Long.numberOfTrailingZeros(bits);
+            }
+            if (word == lastWord) {
+                break;
+            }
+            bits = wordAt(++word);
+        }
+        // nothing lives above the sample, step down instead of wrapping to index 0 so LATEST stays near the top
+        word = first;
+        bits = wordAt(word) & ~(-1L << index);
+        for (long i = 0; i <= maxWords; i++) {
+            if (bits != 0) {
+                return (word << 6) + 63 - Long.numberOfLeadingZeros(bits);
+            }
+            if (word == 0) {
+                break;
+            }
+            bits = wordAt(--word);
+        }
+        return -1;
+    }
+
+    private long wordAt(long word) {
+        AtomicLongArray chunk = chunks.get((int) (word >>> CHUNK_WORD_SHIFT));
+        return chunk == null ? 0 : chunk.get(wordOffset(word));
+    }
+
+    private AtomicLongArray chunk(long word) {
+        int idx = (int) (word >>> CHUNK_WORD_SHIFT);
+        AtomicLongArray chunk = chunks.get(idx);
+        if (chunk == null) {
+            chunks.compareAndSet(idx, null, new AtomicLongArray(CHUNK_WORDS));
+            chunk = chunks.get(idx);
+        }
+        return chunk;
+    }
+
+    private static int wordOffset(long word) {
+        return (int) (word & (CHUNK_WORDS - 1));
+    }
+
+}
@@ -0,0 +1,145 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.utils.IDUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Keys read back from the storage. Keys in the 32 char lower case hex form this tool generates are packed
+ * into two longs, 16 bytes per key, in fixed size chunks so growing never copies the whole store. Other keys
+ * are kept as strings and indexed after the packed ones. Concurrent scanners append whole pages, reads
+ * are only safe once every scanner finished. Key spaces are concatenated chunk by chunk, the packed keys are
+ * copied as they are.
+ */
+public class StoredKeySpace implements KeySpace {
+
+    private static final int CHUNK_SHIFT = 20;
+
+    private static final int CHUNK_KEYS = 1 << CHUNK_SHIFT;
+
+    private final List<long[]> chunks = new ArrayList<>();
+
+    private final List<String> others = new ArrayList<>();
+
+    private long packed;
+
+    public synchronized void addAll(Collection<String> keys) {
+        for (String key : keys) {
+            add(key);
+        }
+    }
+
+    /**
+     * moves the keys of {@code other} to the end of this key space, {@code other} is left empty. Its chunks are
+     * released as they are copied, so the moved keys are held twice for one chunk at most, and a full chunk
+     * landing on a chunk boundary is taken over without a copy.
+     */
+    public synchronized void moveFrom(StoredKeySpace other) {
+        long remaining = other.packed;
+        for (int i = 0; remaining > 0; i++) {
+            long[] source = other.chunks.get(i);
+            other.chunks.set(i, null);
+            int count = (int) Math.min(CHUNK_KEYS, remaining);
+            appendPacked(source, count);
+            remaining -= count;
+        }
+        others.addAll(other.others);
+        other.chunks.clear();
+        other.others.clear();
+        other.packed = 0;
+    }
+
+    private void appendPacked(long[] source, int count) {
+        if (count == CHUNK_KEYS && (packed & (CHUNK_KEYS - 1)) == 0) {
+            chunks.add(source);
+            packed += count;
+            return;
+        }
+        for (int from = 0; from < count; ) {
+            int slot = (int) (packed & (CHUNK_KEYS - 1));
+            if (slot == 0) {
+                chunks.add(new long[CHUNK_KEYS * 2]);
+            }
+            int length = Math.min(count - from, CHUNK_KEYS - slot);
+            System.arraycopy(source, from * 2, chunks.get(chunks.size() - 1), slot * 2, length * 2);
+            from += length;
+            packed += length;
+        }
+    }
+
+    /**
+     * @return the position to {@link #truncate(Mark)} back to
+     */
+    synchronized Mark mark() {
+        return new Mark(packed, others.size());
+    }
+
+    /**
+     * drops every key appended since the mark was taken.
+     */
+    synchronized void truncate(Mark mark) {
+        packed = mark.packed();
+        while ((long) chunks.size() << CHUNK_SHIFT > packed + CHUNK_KEYS - 1) {
+            chunks.remove(chunks.size() - 1);
+        }
+        others.subList(mark.others(), others.size()).clear();
+    }
+
+    public synchronized void add(String key) {
+        if (!IDUtils.isHexId(key)) {
+            others.add(key);
+            return;
+        }
+        int slot = (int) (packed & (CHUNK_KEYS - 1));
+        if (slot == 0) {
+            chunks.add(new long[CHUNK_KEYS * 2]);
+        }
+        long[] chunk = chunks.get((int) (packed >>> CHUNK_SHIFT));
+        chunk[slot * 2] = IDUtils.parseHexIdHigh(key);
+        chunk[slot * 2 + 1] = IDUtils.parseHexIdLow(key);
+        packed++;
+    }
+
+    @Override
+    public long size() {
+        return packed + others.size();
+    }
+
+    @Override
+    public String key(long index) {
+        if (index >= packed) {
+            return others.get((int) (index - packed));
+        }
+        long[] chunk = chunks.get((int) (index >>> CHUNK_SHIFT));
+        int slot = (int) (index & (CHUNK_KEYS - 1));
+        return IDUtils.formatHexId(chunk[slot * 2], chunk[slot * 2 + 1]);
+    }
+
+    /**
+     * the packed and other keys a key space held.
+     */
+    record Mark(long packed, int others) {
+    }
+
+}
@@ -28,6 +28,7 @@ import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 @Slf4j
 public class MetricBean {
@@ -42,10 +43,20 @@ public class MetricBean {
 
     private static final String FAIL_LATENCY_SUMMARY_NAME = "perf_storage_fail_latency_summary";
 
-    private static final String SUCCESS_LATENCY_TIMER_NAME = "perf_storage_success_latency_timer";
+    static final String SUCCESS_LATENCY_TIMER_NAME = "perf_storage_success_latency_timer";
 
     private static final String FAIL_LATENCY_TIMER_NAME = "perf_storage_fail_latency_timer";
 
+    private static final String VALUE_SIZE_SUMMARY_NAME = "perf_storage_value_size_summary";
+
+    private static final String SIZE_CLASS_LATENCY_TIMER_NAME = "perf_storage_size_class_latency_timer";
+
+    private static final String ITEMS_SUMMARY_NAME = "perf_storage_items_summary";
+
+    private final MeterRegistry meterRegistry;
+
+    private final String[] tags;
+
     private final Counter counter;
 
     private final Counter successCounter;
@@ -60,6 +71,15 @@ public class MetricBean {
 
     private final Timer failTimer;
 
+    private final DistributionSummary valueSizeSummary;
+
+    private final DistributionSummary itemsSummary;
+
+    /**
+     * success latency per power of two size class, registered on first use.
+     */
+    private final AtomicReferenceArray<Timer> sizeClassTimers = new AtomicReferenceArray<>(Long.SIZE);
+
     public MetricBean(MeterRegistry meterRegistry, StorageType storageType, OperationType operationType) {
         String[] tags = new String[]{
                 "storage_type",
@@ -67,6 +87,8 @@ public class MetricBean {
                 "operation_type",
                 operationType.toString()
         };
+        this.meterRegistry = meterRegistry;
+        this.tags = tags;
         this.counter = meterRegistry.counter(COUNT_NAME, tags);
         this.successCounter = meterRegistry.counter(SUCCESS_COUNT_NAME, tags);
         this.failCounter = meterRegistry.counter(FAIL_COUNT_NAME, tags);
@@ -80,6 +102,8 @@ public class MetricBean {
                 .publishPercentiles(0.5, 0.75, 0.9, 0.95, 0.99, 0.999)
                 .publishPercentileHistogram(true)
                 .tags(tags).register(meterRegistry);
+        this.valueSizeSummary = meterRegistry.summary(VALUE_SIZE_SUMMARY_NAME, tags);
+        this.itemsSummary = meterRegistry.summary(ITEMS_SUMMARY_NAME, tags);
     }
 
     public void success(long cost) {
@@ -89,6 +113,36 @@ public class MetricBean {
         successTimer.record(cost, TimeUnit.MILLISECONDS);
     }
 
+    /**
+     * records a success together with the size of the value, so latency can be read per size class.
+     */
+    public void success(long cost, long size) {
+        success(cost);
+        valueSizeSummary.record(size);
+        sizeClassTimer(size).record(cost, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * records the number of items a successful multi item operation, like a scan, returned.
+     */
+    public void items(long items) {
+        itemsSummary.record(items);
+    }
+
+    private Timer sizeClassTimer(long size) {
+        int sizeClass = size <= 1 ? 0 : Long.SIZE - Long.numberOfLeadingZeros(size - 1);
+        Timer timer = sizeClassTimers.get(sizeClass);
+        if (timer == null) {
+            timer = Timer.builder(SIZE_CLASS_LATENCY_TIMER_NAME)
+                    .publishPercentiles(0.5, 0.75, 0.9, 0.95, 0.99, 0.999)
+                    .tags(tags)
+                    .tag("size_class", String.valueOf(1L << sizeClass))
+                    .register(meterRegistry);
+            sizeClassTimers.set(sizeClass, timer);
+        }
+        return timer;
+    }
+
     public void fail(long cost) {
         counter.increment();
         failCounter.increment();
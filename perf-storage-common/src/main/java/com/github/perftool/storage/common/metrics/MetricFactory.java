@@ -21,9 +21,15 @@ package com.github.perftool.storage.common.metrics;
 
 import com.github.perftool.storage.common.config.StorageType;
 import com.github.perftool.storage.common.module.OperationType;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
 import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.Collection;
+import java.util.function.ToDoubleFunction;
+
 @Slf4j
 public class MetricFactory {
 
@@ -40,4 +46,44 @@ public class MetricFactory {
         return new MetricBean(meterRegistry, storageType, operationType);
     }
 
+    /**
+     * the success latency timers of every operation of the storage type registered so far.
+     */
+    public Collection<Timer> successTimers() {
+        return meterRegistry.find(MetricBean.SUCCESS_LATENCY_TIMER_NAME)
+                .tag("storage_type", storageType.toString())
+                .timers();
+    }
+
+    /**
+     * a counter tagged with the storage type and the given extra tags.
+     */
+    public Counter newCounter(String name, String... tags) {
+        return Counter.builder(name)
+                .tag("storage_type", storageType.toString())
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * a latency timer tagged with the storage type, publishing the same percentiles as the operation timers.
+     */
+    public Timer newTimer(String name, String... tags) {
+        return Timer.builder(name)
+                .publishPercentiles(0.5, 0.75, 0.9, 0.95, 0.99, 0.999)
+                .tag("storage_type", storageType.toString())
+                .tags(tags)
+                .register(meterRegistry);
+    }
+
+    /**
+     * registers a gauge tagged with the storage type, the gauge keeps the object it reads alive.
+     */
+    public <T> void newGauge(String name, T obj, ToDoubleFunction<T> valueFunction) {
+        Gauge.builder(name, obj, valueFunction)
+                .tag("storage_type", storageType.toString())
+                .strongReference(true)
+                .register(meterRegistry);
+    }
+
 }
@@ -25,6 +25,11 @@ public enum OperationType {
     DELETE("DELETE"),
     UPDATE("UPDATE"),
     READ("READ"),
+    SCAN("SCAN"),
+    MULTI_READ("MULTI_READ"),
+    TRANSACTION("TRANSACTION"),
+    BATCH_INSERT("BATCH_INSERT"),
+    BATCH_UPDATE("BATCH_UPDATE"),
     ;
 
     OperationType(String name) {
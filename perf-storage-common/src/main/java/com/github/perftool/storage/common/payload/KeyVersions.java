@@ -0,0 +1,128 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Last completed version of every updated key, keys never updated are at version zero and take no space.
+ * Keys are held as 64 bit hashes in open addressing tables, striped by the high bits of the hash so concurrent
+ * workers rarely share a lock.
+ * <p>
+ * The tables are not bounded, they grow with the number of distinct keys updated during the run. A slot takes
+ * 12 bytes and tables are kept at most 3/4 full and double when they get there, so an updated key costs 16 to
+ * 32 bytes of heap, up to 3.2 GB for 100 million updated keys; size the heap for it when verifying long update
+ * heavy runs. Keys are only told apart by their hash, two keys with the same hash share a version, which may
+ * report a read as stale. Among a billion updated keys that happens with a chance of about 3%.
+ */
+class KeyVersions {
+
+    private static final HashFunction HASH_FUNCTION = Hashing.farmHashFingerprint64();
+
+    private static final int STRIPE_SHIFT = 6;
+
+    private static final int INITIAL_CAPACITY = 1024;
+
+    private final Stripe[] stripes = new Stripe[1 << STRIPE_SHIFT];
+
+    KeyVersions() {
+        for (int i = 0; i < stripes.length; i++) {
+            stripes[i] = new Stripe();
+        }
+    }
+
+    int get(String key) {
+        long hash = hash(key);
+        return stripe(hash).get(hash);
+    }
+
+    /**
+     * raises the version of the key, a version lower than the current one is ignored.
+     */
+    void advance(String key, int version) {
+        long hash = hash(key);
+        stripe(hash).advance(hash, version);
+    }
+
+    private Stripe stripe(long hash) {
+        return stripes[(int) (hash >>> (Long.SIZE - STRIPE_SHIFT))];
+    }
+
+    private static long hash(String key) {
+        long hash = HASH_FUNCTION.hashString(key, StandardCharsets.ISO_8859_1).asLong();
+        // zero marks an empty slot
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static final class Stripe {
+
+        private long[] hashes = new long[INITIAL_CAPACITY];
+
+        private int[] versions = new int[INITIAL_CAPACITY];
+
+        private int size;
+
+        synchronized int get(long hash) {
+            int slot = find(hashes, hash);
+            return hashes[slot] == 0 ? 0 : versions[slot];
+        }
+
+        synchronized void advance(long hash, int version) {
+            int slot = find(hashes, hash);
+            if (hashes[slot] == 0) {
+                hashes[slot] = hash;
+                versions[slot] = version;
+                if (++size > hashes.length * 3 / 4) {
+                    grow();
+                }
+            } else if (versions[slot] < version) {
+                versions[slot] = version;
+            }
+        }
+
+        private void grow() {
+            long[] oldHashes = hashes;
+            int[] oldVersions = versions;
+            hashes = new long[oldHashes.length * 2];
+            versions = new int[oldHashes.length * 2];
+            for (int i = 0; i < oldHashes.length; i++) {
+                if (oldHashes[i] != 0) {
+                    int slot = find(hashes, oldHashes[i]);
+                    hashes[slot] = oldHashes[i];
+                    versions[slot] = oldVersions[i];
+                }
+            }
+        }
+
+        private static int find(long[] table, long hash) {
+            int mask = table.length - 1;
+            int slot = (int) hash & mask;
+            while (table[slot] != 0 && table[slot] != hash) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+    }
+
+}
@@ -0,0 +1,143 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.random.RandomGenerator;
+import java.util.zip.Deflater;
+
+/**
+ * A random buffer filled once at startup, values are slices of it taken at a random offset. Generating a value
+ * costs one copy at most, so the cost of the generator does not leak into the measured latency.
+ * <p>
+ * The compressibility of the buffer is shaped toward a target ratio: every block mixes random symbols with
+ * back references to earlier data, the share of random symbols being derived from the ratio and the entropy
+ * of the alphabet. The ratio reached by deflate is measured and logged once the pool is filled.
+ */
+@Slf4j
+public class PayloadPool {
+
+    private static final byte[] TEXT_ALPHABET =
+            "abcdefghijklmnopqrstuvwxyzABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789-_".getBytes(StandardCharsets.US_ASCII);
+
+    private static final int TEXT_ENTROPY_BITS = 6;
+
+    private static final int BLOCK_SIZE = 512;
+
+    private static final int MAX_BACK_REFERENCE = 16 * 1024;
+
+    private static final int MEASURE_SAMPLE_SIZE = 1024 * 1024;
+
+    private static final Map<Settings, PayloadPool> POOLS = new ConcurrentHashMap<>();
+
+    private final byte[] buffer;
+
+    public PayloadPool(PayloadKind kind, int size, long seed, double compressionRatio) {
+        this.buffer = new byte[size];
+        SplittableRandom random = seed == 0 ? new SplittableRandom() : new SplittableRandom(seed);
+        int entropyBits = kind == PayloadKind.TEXT ? TEXT_ENTROPY_BITS : Byte.SIZE;
+        double literalFraction = compressionRatio <= 1 ? 1 : Math.min(1, Byte.SIZE / (entropyBits * compressionRatio));
+        int literalPerBlock = Math.max(1, (int) Math.round(BLOCK_SIZE * literalFraction));
+        for (int pos = 0; pos < size; pos += BLOCK_SIZE) {
+            int blockEnd = Math.min(size, pos + BLOCK_SIZE);
+            int literalEnd = Math.min(blockEnd, pos + literalPerBlock);
+            for (int i = pos; i < literalEnd; i++) {
+                buffer[i] = kind == PayloadKind.TEXT
+                        ? TEXT_ALPHABET[random.nextInt(TEXT_ALPHABET.length)] : (byte) random.nextInt(256);
+            }
+            for (int i = literalEnd; i < blockEnd; ) {
+                int run = Math.min(blockEnd - i, 4 + random.nextInt(252));
+                int from = i - 1 - random.nextInt(Math.min(i, MAX_BACK_REFERENCE));
+                for (int j = 0; j < run; j++) {
+                    buffer[i + j] = buffer[from + j];
+                }
+                i += run;
+            }
+        }
+        log.info("{} payload pool of {} bytes generated, target compression ratio {}, deflate ratio {}",
+                kind, size, compressionRatio, String.format("%.2f", measureRatio()));
+    }
+
+    /**
+     * pool shared by all the callers of the process asking for the same kind and settings.
+     */
+    public static PayloadPool shared(PayloadKind kind, int size, long seed, double compressionRatio) {
+        return POOLS.computeIfAbsent(new Settings(kind, size, seed, compressionRatio),
+                s -> new PayloadPool(s.kind(), s.size(), s.seed(), s.compressionRatio()));
+    }
+
+    private double measureRatio() {
+        int length = Math.min(buffer.length, MEASURE_SAMPLE_SIZE);
+        Deflater deflater = new Deflater();
+        try {
+            deflater.setInput(buffer, 0, length);
+            deflater.finish();
+            byte[] out = new byte[length + 1024];
+            long compressed = 0;
+            while (!deflater.finished()) {
+                compressed += deflater.deflate(out);
+            }
+            return compressed == 0 ? 1 : (double) length / compressed;
+        } finally {
+            deflater.end();
+        }
+    }
+
+    public String nextString(RandomGenerator random, int length) {
+        if (length > buffer.length) {
+            return new String(tile(random, length), StandardCharsets.ISO_8859_1);
+        }
+        return new String(buffer, nextOffset(random, length), length, StandardCharsets.ISO_8859_1);
+    }
+
+    /**
+     * a stream over the pool itself, no copy is made unless the value is larger than the pool.
+     */
+    public InputStream nextStream(RandomGenerator random, int length) {
+        if (length > buffer.length) {
+            return new ByteArrayInputStream(tile(random, length));
+        }
+        return new ByteArrayInputStream(buffer, nextOffset(random, length), length);
+    }
+
+    private int nextOffset(RandomGenerator random, int length) {
+        return random.nextInt(buffer.length - length + 1);
+    }
+
+    private byte[] tile(RandomGenerator random, int length) {
+        byte[] value = new byte[length];
+        for (int pos = 0; pos < length; pos += buffer.length) {
+            int chunk = Math.min(buffer.length, length - pos);
+            System.arraycopy(buffer, nextOffset(random, chunk), value, pos, chunk);
+        }
+        return value;
+    }
+
+    private record Settings(PayloadKind kind, int size, long seed, double compressionRatio) {
+    }
+
+}
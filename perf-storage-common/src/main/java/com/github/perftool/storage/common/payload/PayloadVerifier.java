@@ -0,0 +1,191 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import io.micrometer.core.instrument.Counter;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.CRC32C;
+
+/**
+ * Values that can be checked on read without keeping them. A value is a 16 char header followed by a slice of
+ * the payload pool picked by the key and the version, the header holds the version and a CRC32C of the key,
+ * the version and the body, both as 8 hex chars. Values shorter than the header are padded to its length.
+ * <p>
+ * Inserts and preset write version zero, every update writes the last completed version of the key plus one.
+ * A read compares the version it finds with the one completed before the read started, so an update racing
+ * the read is never reported as stale.
+ */
+@Slf4j
+public class PayloadVerifier {
+
+    public static final int HEADER_LENGTH = 16;
+
+    private static final int HEX_LENGTH = 8;
+
+    private static final String COUNT_NAME = "perf_storage_verify_count";
+
+    /**
+     * reads checked for a verify header before deciding whether the dataset carries any.
+     */
+    private static final int HEADER_PROBE_READS = 100;
+
+    private final PayloadPool payloadPool;
+
+    private final KeyVersions versions = new KeyVersions();
+
+    private final Map<VerifyResult, Counter> counters = new EnumMap<>(VerifyResult.class);
+
+    private final AtomicInteger probedReads = new AtomicInteger();
+
+    private final AtomicInteger headerlessReads = new AtomicInteger();
+
+    public PayloadVerifier(PayloadPool payloadPool, MetricFactory metricFactory) {
+        this.payloadPool = payloadPool;
+        for (VerifyResult result : VerifyResult.values()) {
+            counters.put(result, metricFactory.newCounter(COUNT_NAME, "result", result.name().toLowerCase()));
+        }
+    }
+
+    /**
+     * @return the value of the key at the version, at least {@link #HEADER_LENGTH} chars long
+     */
+    public String value(String key, int version, int length) {
+        int bodyLength = Math.max(0, length - HEADER_LENGTH);
+        SplittableRandom random = new SplittableRandom((long) key.hashCode() << Integer.SIZE ^ version);
+        String body = payloadPool.nextString(random, bodyLength);
+        return hex(version) + hex(checksum(key, version, body)) + body;
+    }
+
+    /**
+     * @return the version the next update of the key writes
+     */
+    public int nextVersion(String key) {
+        return versions.get(key) + 1;
+    }
+
+    /**
+     * @return the version a read of the key must find at least, taken before the read is issued
+     */
+    public int expectedVersion(String key) {
+        return versions.get(key);
+    }
+
+    /**
+     * records a completed update of the key with the value it wrote.
+     */
+    public void updated(String key, String value) {
+        try {
+            versions.advance(key, parseHex(value, 0));
+        } catch (NumberFormatException e) {
+            log.warn("written value of {} has no version header", key);
+        }
+    }
+
+    /**
+     * @param value the value read, null when the key has none
+     */
+    public VerifyResult verify(String key, int expectedVersion, String value) {
+        if (value != null && probedReads.get() < HEADER_PROBE_READS) {
+            probeHeader(value);
+        }
+        VerifyResult result = check(key, expectedVersion, value);
+        counters.get(result).increment();
+        if (result != VerifyResult.OK) {
+            log.debug("verify {} of {} expected version {}", result, key, expectedVersion);
+        }
+        return result;
+    }
+
+    /**
+     * a dataset loaded without VERIFY_ENABLE has no headers and every read of it counts as a mismatch, which
+     * says nothing about the storage. It is told apart by the first reads all lacking a header.
+     */
+    private void probeHeader(String value) {
+        if (probedReads.incrementAndGet() > HEADER_PROBE_READS || hasHeader(value)) {
+            return;
+        }
+        if (headerlessReads.incrementAndGet() == HEADER_PROBE_READS) {
+            log.error("none of the first {} values read has a verify header, the dataset was not written with "
+                    + "VERIFY_ENABLE, preset it again with VERIFY_ENABLE or every read counts as a mismatch",
+                    HEADER_PROBE_READS);
+        }
+    }
+
+    private static boolean hasHeader(String value) {
+        if (value.length() < HEADER_LENGTH) {
+            return false;
+        }
+        try {
+            parseHex(value, 0);
+            parseHex(value, HEX_LENGTH);
+            return true;
+        } catch (NumberFormatException e) {
+            return false;
+        }
+    }
+
+    private static VerifyResult check(String key, int expectedVersion, String value) {
+        if (value == null) {
+            return VerifyResult.MISSING;
+        }
+        if (value.length() < HEADER_LENGTH) {
+            return VerifyResult.MISMATCH;
+        }
+        int version;
+        int checksum;
+        try {
+            version = parseHex(value, 0);
+            checksum = parseHex(value, HEX_LENGTH);
+        } catch (NumberFormatException e) {
+            return VerifyResult.MISMATCH;
+        }
+        if (checksum != checksum(key, version, value.substring(HEADER_LENGTH))) {
+            return VerifyResult.MISMATCH;
+        }
+        return Integer.compareUnsigned(version, expectedVersion) < 0 ? VerifyResult.STALE : VerifyResult.OK;
+    }
+
+    private static int checksum(String key, int version, String body) {
+        CRC32C crc = new CRC32C();
+        crc.update(key.getBytes(StandardCharsets.ISO_8859_1));
+        for (int shift = Integer.SIZE - Byte.SIZE; shift >= 0; shift -= Byte.SIZE) {
+            crc.update(version >>> shift);
+        }
+        crc.update(body.getBytes(StandardCharsets.ISO_8859_1));
+        return (int) crc.getValue();
+    }
+
+    private static String hex(int value) {
+        String hex = Integer.toHexString(value);
+        return "0".repeat(HEX_LENGTH - hex.length()) + hex;
+    }
+
+    private static int parseHex(String value, int from) {
+        return Integer.parseUnsignedInt(value, from, from + HEX_LENGTH, 16);
+    }
+
+}
@@ -0,0 +1,40 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+public enum VerifyResult {
+
+    /**
+     * the value is intact and at least as new as the last update completed before the read.
+     */
+    OK,
+    /**
+     * the checksum does not match, the value is corrupt, truncated or belongs to another key.
+     */
+    MISMATCH,
+    /**
+     * the value is intact but older than the last update completed before the read, a lost write.
+     */
+    STALE,
+    /**
+     * the key has no value.
+     */
+    MISSING,
+}
@@ -0,0 +1,204 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.preset;
+
+import com.google.common.hash.Hashing;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Append only log of a preset, so a preset killed halfway resumes instead of starting over. The first line
+ * records the plan, the seed, offset and size of the generated keys, every following line one completed
+ * chunk as target, first index and size. Each line is forced to disk before the chunk counts as done, a
+ * torn last line is ignored. The file is removed once every chunk of the plan completed and the caller
+ * recorded the loaded keys.
+ */
+@Slf4j
+public class PresetCheckpoint {
+
+    private static final String PLAN = "plan";
+
+    private static final String DONE = "done";
+
+    private final Path path;
+
+    private final String fingerprint;
+
+    private final Set<String> doneChunks = new HashSet<>();
+
+    private Plan plan;
+
+    private boolean finished;
+
+    private FileChannel channel;
+
+    private PresetCheckpoint(Path path, String fingerprint) {
+        this.path = path;
+        this.fingerprint = fingerprint;
+    }
+
+    /**
+     * reads the checkpoint at the path, a checkpoint of another target is discarded.
+     *
+     * @param identity description of the backend target the preset loads into
+     */
+    public static PresetCheckpoint open(Path path, String identity) throws IOException {
+        String fingerprint = Hashing.murmur3_128().hashString(identity, StandardCharsets.UTF_8).toString();
+        PresetCheckpoint checkpoint = new PresetCheckpoint(path, fingerprint);
+        if (Files.exists(path)) {
+            checkpoint.load(Files.readAllLines(path, StandardCharsets.UTF_8));
+        }
+        return checkpoint;
+    }
+
+    private void load(List<String> lines) {
+        for (String line : lines) {
+            String[] parts = line.split(" ");
+            try {
+                if (plan == null) {
+                    if (parts.length != 5 || !PLAN.equals(parts[0]) || !fingerprint.equals(parts[1])) {
+                        log.info("preset checkpoint {} belongs to another target, discard it", path);
+                        return;
+                    }
+                    plan = new Plan(Long.parseLong(parts[2]), Long.parseLong(parts[3]), Long.parseLong(parts[4]));
+                } else if (parts.length == 4 && DONE.equals(parts[0])) {
+                    doneChunks.add(chunkId(parts[1], Long.parseLong(parts[2]), Long.parseLong(parts[3])));
+                }
+            } catch (NumberFormatException e) {
+                log.warn("skip torn preset checkpoint line [{}]", line);
+            }
+        }
+        if (plan != null) {
+            log.info("preset checkpoint {} resumes plan {} with {} chunks done", path, plan, doneChunks.size());
+        }
+    }
+
+    /**
+     * @return the plan of an unfinished preset, null when there is none
+     */
+    public Plan plan() {
+        return plan;
+    }
+
+    /**
+     * starts a new plan, dropping whatever the file held.
+     */
+    public synchronized void begin(Plan plan) throws IOException {
+        close();
+        this.plan = plan;
+        this.finished = false;
+        doneChunks.clear();
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        append(PLAN + " " + fingerprint + " " + plan.seed() + " " + plan.offset() + " " + plan.size());
+    }
+
+    public synchronized boolean isDone(String target, long from, long size) {
+        return doneChunks.contains(chunkId(target, from, size));
+    }
+
+    /**
+     * records a completed chunk, durable when the call returns.
+     */
+    public synchronized void markDone(String target, long from, long size) throws IOException {
+        if (channel == null) {
+            channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                    StandardOpenOption.WRITE);
+            channel.position(channel.size());
+            endTornLine();
+        }
+        append(DONE + " " + target + " " + from + " " + size);
+        doneChunks.add(chunkId(target, from, size));
+    }
+
+    /**
+     * marks that every chunk of the plan completed.
+     */
+    public synchronized void markFinished() {
+        finished = true;
+    }
+
+    /**
+     * removes the checkpoint of a finished plan, the next boot plans a new preset. A checkpoint with failed
+     * chunks is kept, the next boot loads them again.
+     */
+    public synchronized void complete() throws IOException {
+        close();
+        if (!finished) {
+            log.warn("preset incomplete, the next boot resumes from checkpoint {}", path);
+            return;
+        }
+        Files.deleteIfExists(path);
+        plan = null;
+        doneChunks.clear();
+        log.info("preset complete, removed checkpoint {}", path);
+    }
+
+    private void append(String line) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap((line + "\n").getBytes(StandardCharsets.UTF_8));
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        channel.force(false);
+    }
+
+    /**
+     * terminates a torn last line left by a kill, so the next line is not appended to it.
+     */
+    private void endTornLine() throws IOException {
+        long size = channel.size();
+        if (size == 0) {
+            return;
+        }
+        ByteBuffer last = ByteBuffer.allocate(1);
+        channel.read(last, size - 1);
+        if (last.get(0) != '\n') {
+            append("");
+        }
+    }
+
+    private void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            channel = null;
+        }
+    }
+
+    private static String chunkId(String target, long from, long size) {
+        return target + " " + from + " " + size;
+    }
+
+    /**
+     * the generated keys a preset loads, {@code size} keys of seed {@code seed} starting at {@code offset}.
+     */
+    public record Plan(long seed, long offset, long size) {
+    }
+
+}
@@ -0,0 +1,179 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.preset;
+
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
+import lombok.extern.slf4j.Slf4j;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads the preset data of every target in fixed size chunks on one shared pool, so all tables are loaded
+ * at once instead of one after the other. Reports rows/s and MB/s when done.
+ * <p>
+ * With a checkpoint, chunks a previous run completed are skipped and every completed chunk is recorded, the
+ * checkpoint is marked finished when no chunk failed. Progress is published as gauges while the preset runs.
+ */
+@Slf4j
+public class PresetRunner {
+
+    private static final String ROWS_DONE_NAME = "perf_storage_preset_rows_done";
+
+    private static final String ROWS_PER_SECOND_NAME = "perf_storage_preset_rows_per_second";
+
+    private static final String ETA_SECONDS_NAME = "perf_storage_preset_eta_seconds";
+
+    private final String name;
+
+    private final int parallelism;
+
+    private final MetricFactory metricFactory;
+
+    private final PresetCheckpoint checkpoint;
+
+    private final List<Runnable> tasks = new ArrayList<>();
+
+    private final AtomicLong rows = new AtomicLong();
+
+    private final AtomicLong failedRows = new AtomicLong();
+
+    private final AtomicLong bytes = new AtomicLong();
+
+    private long totalRows;
+
+    private long resumedRows;
+
+    private volatile long start;
+
+    public PresetRunner(String name, int parallelism) {
+        this(name, parallelism, null, null);
+    }
+
+    /**
+     * @param metricFactory registers the progress gauges, may be null
+     * @param checkpoint    records completed chunks, may be null
+     */
+    public PresetRunner(String name, int parallelism, MetricFactory metricFactory, PresetCheckpoint checkpoint) {
+        this.name = name;
+        this.parallelism = Math.max(1, parallelism);
+        this.metricFactory = metricFactory;
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * splits the keys of a target into chunks of {@code chunkSize} keys, each loaded by one loader call.
+     * Chunk boundaries only depend on the chunk size, a resumed preset finds the chunks it completed before.
+     */
+    public void add(String target, KeySpace keys, int chunkSize, ChunkLoader loader) {
+        totalRows += keys.size();
+        for (long from = 0; from < keys.size(); from += chunkSize) {
+            long size = Math.min(chunkSize, keys.size() - from);
+            if (checkpoint != null && checkpoint.isDone(target, from, size)) {
+                resumedRows += size;
+                continue;
+            }
+            long chunkFrom = from;
+            KeySpace chunk = keys.slice(from, size);
+            tasks.add(() -> load(target, chunkFrom, chunk, loader));
+        }
+    }
+
+    private void load(String target, long from, KeySpace chunk, ChunkLoader loader) {
+        try {
+            bytes.addAndGet(loader.load(chunk));
+            rows.addAndGet(chunk.size());
+        } catch (Exception e) {
+            failedRows.addAndGet(chunk.size());
+            log.error("preset {} chunk of {} fail. ", name, target, e);
+            return;
+        }
+        if (checkpoint != null) {
+            try {
+                checkpoint.markDone(target, from, chunk.size());
+            } catch (IOException e) {
+                log.warn("record preset {} chunk {} of {} in checkpoint fail. ", name, from, target, e);
+            }
+        }
+    }
+
+    /**
+     * runs every chunk and blocks until all of them finished.
+     */
+    public void run() {
+        start = System.currentTimeMillis();
+        if (resumedRows > 0) {
+            log.info("preset {} resumes, {} of {} rows done before", name, resumedRows, totalRows);
+        }
+        if (metricFactory != null) {
+            metricFactory.newGauge(ROWS_DONE_NAME, this, PresetRunner::rowsDone);
+            metricFactory.newGauge(ROWS_PER_SECOND_NAME, this, PresetRunner::rowsPerSecond);
+            metricFactory.newGauge(ETA_SECONDS_NAME, this, PresetRunner::etaSeconds);
+        }
+        boolean interrupted = false;
+        ExecutorService threadPool = Executors.newFixedThreadPool(parallelism,
+                new ThreadFactoryBuilder().setNameFormat("perf-storage-preset-%d").build());
+        try {
+            tasks.forEach(threadPool::execute);
+            threadPool.shutdown();
+            while (!threadPool.awaitTermination(1, TimeUnit.MINUTES)) {
+                log.info("preset {} in progress, {} of {} rows loaded, {} rows/s, eta {} s", name, rowsDone(),
+                        totalRows, String.format("%.0f", rowsPerSecond()), String.format("%.0f", etaSeconds()));
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            interrupted = true;
+            log.error("preset {} interrupted ", name, e);
+        } finally {
+            threadPool.shutdownNow();
+        }
+        double seconds = Math.max(1, System.currentTimeMillis() - start) / 1000.0;
+        log.info("preset {} loaded {} rows, {} failed, in {} s, {} rows/s, {} MB/s", name, rows.get(),
+                failedRows.get(), String.format("%.1f", seconds), String.format("%.0f", rows.get() / seconds),
+                String.format("%.2f", bytes.get() / seconds / 1024 / 1024));
+        if (checkpoint != null && !interrupted && failedRows.get() == 0) {
+            checkpoint.markFinished();
+        }
+    }
+
+    private double rowsDone() {
+        return resumedRows + rows.get();
+    }
+
+    private double rowsPerSecond() {
+        return rows.get() / (Math.max(1, System.currentTimeMillis() - start) / 1000.0);
+    }
+
+    private double etaSeconds() {
+        double rate = rowsPerSecond();
+        if (rate == 0) {
+            return Double.NaN;
+        }
+        return (totalRows - rowsDone() - failedRows.get()) / rate;
+    }
+
+}
@@ -0,0 +1,51 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+package com.github.perftool.storage.common.service;
+
+import com.github.perftool.storage.common.config.CommonConfig;
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.payload.PayloadKind;
+import com.github.perftool.storage.common.payload.PayloadPool;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import org.springframework.stereotype.Service;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Hands out the payload verifier of a metric factory, the versions of a key must be seen by every worker
+ * writing it, so all the workers of a storage type share one verifier.
+ */
+@Service
+public class VerifyService {
+
+    private final Map<MetricFactory, PayloadVerifier> map = new ConcurrentHashMap<>();
+
+    /**
+     * @return the verifier of the metric factory, null when VERIFY_ENABLE is not set
+     */
+    public PayloadVerifier acquireVerifier(CommonConfig config, MetricFactory metricFactory) {
+        if (!config.verifyEnable) {
+            return null;
+        }
+        return map.computeIfAbsent(metricFactory, m -> new PayloadVerifier(PayloadPool.shared(PayloadKind.TEXT,
+                config.payloadPoolSize, config.randomSeed, config.payloadCompressionRatio), m));
+    }
+
+}
@@ -25,16 +25,65 @@ import java.util.UUID;
 
 public class IDUtils {
 
-    public static List<String> getTargetIds(int presetDataSize) {
-        List<String> ids = new ArrayList<>();
-        for (int i = 0; i < presetDataSize; i++) {
-            ids.add(getTargetId());
-        }
-        return ids;
-    }
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    private static final int HEX_ID_LENGTH = 32;
 
     public static String getTargetId() {
         return UUID.randomUUID().toString().replace("-", "");
     }
 
+    /**
+     * formats two longs as a 32 char lower case hex id, the same shape as {@link #getTargetId()}.
+     */
+    public static String formatHexId(long high, long low) {
+        char[] chars = new char[HEX_ID_LENGTH];
+        for (int i = 15; i >= 0; i--) {
+            chars[i] = HEX_DIGITS[(int) (high & 0xF)];
+            chars[i + 16] = HEX_DIGITS[(int) (low & 0xF)];
+            high >>>= 4;
+            low >>>= 4;
+        }
+        return new String(chars);
+    }
+
+    /**
+     * whether the key is a 32 char lower case hex id, which {@link #formatHexId(long, long)} round trips.
+     */
+    public static boolean isHexId(String key) {
+        if (key.length() != HEX_ID_LENGTH) {
+            return false;
+        }
+        for (int i = 0; i < HEX_ID_LENGTH; i++) {
+            char c = key.charAt(i);
+            if ((c < '0' || c > '9') && (c < 'a' || c > 'f')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * boundaries splitting the hex id space into {@code parts} ranges of near equal size, at most 256.
+     * Range i holds the ids in (boundary[i - 1], boundary[i]], the first range is open below and the last
+     * open above, so keys outside the hex alphabet still fall in exactly one range.
+     */
+    public static List<String> hexSplitPoints(int parts) {
+        int count = Math.max(1, Math.min(parts, 256));
+        List<String> points = new ArrayList<>(count - 1);
+        for (int i = 1; i < count; i++) {
+            int prefix = 256 * i / count;
+            points.add(new String(new char[]{HEX_DIGITS[prefix >>> 4], HEX_DIGITS[prefix & 0xF]}));
+        }
+        return points;
+    }
+
+    public static long parseHexIdHigh(String key) {
+        return Long.parseUnsignedLong(key, 0, 16, 16);
+    }
+
+    public static long parseHexIdLow(String key) {
+        return Long.parseUnsignedLong(key, 16, 32, 16);
+    }
+
 }
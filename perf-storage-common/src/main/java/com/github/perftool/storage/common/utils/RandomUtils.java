@@ -19,39 +19,20 @@
 
 package com.github.perftool.storage.common.utils;
 
-import java.util.Random;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class RandomUtils {
 
-    private static final Random random = new Random();
-
     public static double randomPercentage() {
-        return random.nextDouble(1);
+        return ThreadLocalRandom.current().nextDouble(1);
     }
 
     public static int random() {
-        return random.nextInt();
+        return ThreadLocalRandom.current().nextInt();
     }
 
     public static int randomElem(int listSize) {
-        return random.nextInt(listSize);
-    }
-
-    public static String getRandomStr(int strLength) {
-        StringBuilder messageBuilder = new StringBuilder(strLength);
-        for (int i = 0; i < strLength; i++) {
-            messageBuilder.append('a' + ThreadLocalRandom.current().nextInt(26));
-        }
-        return messageBuilder.toString();
-    }
-
-    public static byte[] getRandomBytes(int messageByte) {
-        byte[] array = new byte[messageByte];
-        for (int i = 0; i < messageByte; i++) {
-            array[i] = (byte) (97 + ThreadLocalRandom.current().nextInt(26));
-        }
-        return array;
+        return ThreadLocalRandom.current().nextInt(listSize);
     }
 
 }
@@ -0,0 +1,165 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+class KeyChooserTest {
+
+    private static final int ITEMS = 1000;
+
+    private static final int SAMPLES = 200_000;
+
+    private static final double THETA = 0.99;
+
+    @Test
+    void zipfianFollowsTheClosedForm() {
+        long[] histogram = histogram(new ZipfianKeyChooser(THETA));
+        double zetan = zeta(ITEMS);
+        Assertions.assertEquals(1 / zetan, share(histogram[0]), 0.01);
+        Assertions.assertEquals(Math.pow(2, -THETA) / zetan, share(histogram[1]), 0.01);
+        Assertions.assertTrue(histogram[1] > histogram[10] && histogram[10] > histogram[ITEMS - 1]);
+    }
+
+    @Test
+    void zipfianRejectsConstantsOutsideTheOpenInterval() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ZipfianKeyChooser(0));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ZipfianKeyChooser(1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new ZipfianKeyChooser(1.2));
+    }
+
+    @Test
+    void zipfianKeepsItsStateNextToOtherItemCounts() {
+        ZipfianKeyChooser keys = new ZipfianKeyChooser(THETA);
+        SizeDistribution sizes = new ZipfianSizeDistribution(1, 10, THETA);
+        SplittableRandom random = new SplittableRandom(42);
+        long[] histogram = new long[ITEMS];
+        long[] sizeHistogram = new long[11];
+        for (int i = 0; i < SAMPLES; i++) {
+            histogram[(int) keys.next(random, ITEMS)]++;
+            sizeHistogram[sizes.next(random)]++;
+        }
+        Assertions.assertEquals(1 / zeta(ITEMS), share(histogram[0]), 0.01);
+        Assertions.assertEquals(1 / zeta(10), share(sizeHistogram[1]), 0.01);
+    }
+
+    @Test
+    void zipfianFollowsAGrowingItemCount() {
+        ZipfianKeyChooser chooser = new ZipfianKeyChooser(THETA);
+        SplittableRandom random = new SplittableRandom(42);
+        for (int items : new int[]{100, 102, 104, 200, 50_000}) {
+            long first = 0;
+            for (int i = 0; i < SAMPLES; i++) {
+                long index = chooser.next(random, items);
+                Assertions.assertTrue(index >= 0 && index < items);
+                if (index == 0) {
+                    first++;
+                }
+            }
+            Assertions.assertEquals(1 / zeta(items), share(first), 0.01, "items " + items);
+        }
+    }
+
+    @Test
+    void zipfianOfASingleItemIsZero() {
+        Assertions.assertEquals(0, new ZipfianKeyChooser(THETA).next(new SplittableRandom(1), 1));
+    }
+
+    @Test
+    void latestFavoursTheNewestIndex() {
+        long[] latest = histogram(new LatestKeyChooser(THETA));
+        long[] zipfian = histogram(new ZipfianKeyChooser(THETA));
+        Assertions.assertEquals(share(zipfian[0]), share(latest[ITEMS - 1]), 0.01);
+        Assertions.assertEquals(ITEMS - 1, argMax(latest));
+        Assertions.assertTrue(latest[ITEMS - 2] > latest[0]);
+    }
+
+    @Test
+    void hotspotSendsTheOperationFractionToTheHotSet() {
+        long[] histogram = histogram(new HotspotKeyChooser(0.2, 0.8));
+        long hot = 0;
+        for (int i = 0; i < ITEMS / 5; i++) {
+            hot += histogram[i];
+        }
+        Assertions.assertEquals(0.8, share(hot), 0.01);
+        Assertions.assertEquals(0.8 / (ITEMS / 5), share(histogram[0]), 0.002);
+        Assertions.assertEquals(0.2 / (ITEMS * 4 / 5), share(histogram[ITEMS - 1]), 0.0002);
+    }
+
+    @Test
+    void hotspotRejectsFractionsOutsideTheUnitInterval() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HotspotKeyChooser(1.5, 0.8));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HotspotKeyChooser(0.2, -0.1));
+    }
+
+    @Test
+    void scrambledZipfianMovesTheHottestKeyAwayFromZero() {
+        long[] scrambled = histogram(new ScrambledZipfianKeyChooser(THETA));
+        long[] zipfian = histogram(new ZipfianKeyChooser(THETA));
+        long hottest = Math.floorMod(ScrambledZipfianKeyChooser.fnvHash64(0), ITEMS);
+        Assertions.assertEquals(hottest, argMax(scrambled));
+        Assertions.assertEquals(share(zipfian[0]), share(scrambled[(int) hottest]), 0.01);
+    }
+
+    @Test
+    void uniformCoversTheRangeEvenly() {
+        long[] histogram = histogram(new UniformKeyChooser());
+        for (long count : histogram) {
+            Assertions.assertEquals(1.0 / ITEMS, share(count), 0.0005);
+        }
+    }
+
+    private static long[] histogram(KeyChooser chooser) {
+        SplittableRandom random = new SplittableRandom(42);
+        long[] histogram = new long[ITEMS];
+        for (int i = 0; i < SAMPLES; i++) {
+            long index = chooser.next(random, ITEMS);
+            Assertions.assertTrue(index >= 0 && index < ITEMS, "index out of range " + index);
+            histogram[(int) index]++;
+        }
+        return histogram;
+    }
+
+    private static double zeta(long items) {
+        double zetan = 0;
+        for (int i = 1; i <= items; i++) {
+            zetan += 1 / Math.pow(i, THETA);
+        }
+        return zetan;
+    }
+
+    private static double share(long count) {
+        return (double) count / SAMPLES;
+    }
+
+    private static int argMax(long[] histogram) {
+        int max = 0;
+        for (int i = 1; i < histogram.length; i++) {
+            if (histogram[i] > histogram[max]) {
+                max = i;
+            }
+        }
+        return max;
+    }
+
+}
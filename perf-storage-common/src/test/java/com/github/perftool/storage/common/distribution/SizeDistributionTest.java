@@ -0,0 +1,127 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.distribution;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+
+class SizeDistributionTest {
+
+    private static final int SAMPLES = 100_000;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void emptySpecIsTheDefaultSize() {
+        SizeDistribution distribution = SizeDistributionFactory.create(" ", 1024);
+        Assertions.assertEquals(1024, distribution.next(new SplittableRandom(1)));
+    }
+
+    @Test
+    void constantAlwaysReturnsTheSize() {
+        SizeDistribution distribution = SizeDistributionFactory.create("constant:300", 1024);
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 100; i++) {
+            Assertions.assertEquals(300, distribution.next(random));
+        }
+    }
+
+    @Test
+    void uniformIncludesBothBounds() {
+        int[] counts = histogram(SizeDistributionFactory.create("uniform:10:19", 1024), 20);
+        for (int size = 0; size < 20; size++) {
+            if (size < 10) {
+                Assertions.assertEquals(0, counts[size]);
+            } else {
+                Assertions.assertEquals(0.1, (double) counts[size] / SAMPLES, 0.01);
+            }
+        }
+    }
+
+    @Test
+    void normalIsCenteredAndTruncatedAtOneByte() {
+        SizeDistribution distribution = SizeDistributionFactory.create("normal:100:20", 1024);
+        SplittableRandom random = new SplittableRandom(7);
+        double sum = 0;
+        for (int i = 0; i < SAMPLES; i++) {
+            sum += distribution.next(random);
+        }
+        Assertions.assertEquals(100, sum / SAMPLES, 0.5);
+        SizeDistribution wide = new NormalSizeDistribution(2, 100);
+        for (int i = 0; i < SAMPLES; i++) {
+            Assertions.assertTrue(wide.next(random) >= 1);
+        }
+    }
+
+    @Test
+    void zipfianFavoursTheSmallestSize() {
+        int[] counts = histogram(SizeDistributionFactory.create("zipfian:100:199:0.9", 1024), 200);
+        for (int size = 0; size < 100; size++) {
+            Assertions.assertEquals(0, counts[size]);
+        }
+        Assertions.assertTrue(counts[100] > counts[101] && counts[101] > counts[150] && counts[150] > counts[199]);
+    }
+
+    @Test
+    void histogramFollowsTheWeights() throws IOException {
+        Path file = dir.resolve("sizes.txt");
+        Files.writeString(file, "# size weight\n\n100 1\n200, 3\n400\t0\n800 6\n", StandardCharsets.UTF_8);
+        int[] counts = histogram(SizeDistributionFactory.create("histogram:" + file, 1024), 801);
+        Assertions.assertEquals(0.1, (double) counts[100] / SAMPLES, 0.01);
+        Assertions.assertEquals(0.3, (double) counts[200] / SAMPLES, 0.01);
+        Assertions.assertEquals(0, counts[400]);
+        Assertions.assertEquals(0.6, (double) counts[800] / SAMPLES, 0.01);
+    }
+
+    @Test
+    void histogramRejectsBadFiles() throws IOException {
+        Path empty = Files.writeString(dir.resolve("empty.txt"), "# nothing\n", StandardCharsets.UTF_8);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HistogramSizeDistribution(empty));
+        Path invalid = Files.writeString(dir.resolve("invalid.txt"), "100 1 2\n", StandardCharsets.UTF_8);
+        Assertions.assertThrows(IllegalArgumentException.class, () -> new HistogramSizeDistribution(invalid));
+    }
+
+    @Test
+    void invalidSpecsAreRejected() {
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SizeDistributionFactory.create("pareto:1", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SizeDistributionFactory.create("uniform:1", 1));
+        Assertions.assertThrows(IllegalArgumentException.class, () -> SizeDistributionFactory.create("normal", 1));
+    }
+
+    private static int[] histogram(SizeDistribution distribution, int maxSize) {
+        SplittableRandom random = new SplittableRandom(42);
+        int[] counts = new int[maxSize + 1];
+        for (int i = 0; i < SAMPLES; i++) {
+            int size = distribution.next(random);
+            Assertions.assertTrue(size >= 0 && size <= maxSize, "size out of range " + size);
+            counts[size]++;
+        }
+        return counts;
+    }
+
+}
@@ -0,0 +1,88 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+class PacerTest {
+
+    @Test
+    void catchUpSlotsAreEvenlySpaced() {
+        Pacer pacer = new Pacer(1000);
+        long previous = pacer.acquire(true);
+        for (int i = 0; i < 20; i++) {
+            long slot = pacer.acquire(true);
+            Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(1), slot - previous);
+            previous = slot;
+        }
+    }
+
+    @Test
+    void catchUpIssuesMissedSlotsWithoutWaiting() throws InterruptedException {
+        Pacer pacer = new Pacer(1000);
+        long first = pacer.acquire(true);
+        Thread.sleep(200);
+        long start = System.nanoTime();
+        for (int i = 1; i <= 20; i++) {
+            Assertions.assertEquals(first + i * TimeUnit.MILLISECONDS.toNanos(1), pacer.acquire(true));
+        }
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(150),
+                "missed slots are in the past and must not park");
+    }
+
+    @Test
+    void lateSlotMovesToNowWithoutCatchUp() throws InterruptedException {
+        Pacer pacer = new Pacer(1000);
+        pacer.acquire(false);
+        Thread.sleep(50);
+        long beforeAcquire = System.nanoTime();
+        long late = pacer.acquire(false);
+        Assertions.assertTrue(late >= beforeAcquire, "a late slot is not issued in the past");
+        long next = pacer.acquire(false);
+        Assertions.assertTrue(next - late >= TimeUnit.MILLISECONDS.toNanos(1), "no burst after falling behind");
+    }
+
+    @Test
+    void claimHandsOutFutureSlotsWithoutParking() {
+        Pacer pacer = new Pacer(10);
+        long start = System.nanoTime();
+        long first = pacer.claim(true);
+        long second = pacer.claim(true);
+        long third = pacer.claim(false);
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(50));
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), second - first);
+        Assertions.assertEquals(TimeUnit.MILLISECONDS.toNanos(100), third - second);
+    }
+
+    @Test
+    void unlimitedRateDoesNotPark() {
+        Pacer pacer = new Pacer(0);
+        long start = System.nanoTime();
+        for (int i = 0; i < 10_000; i++) {
+            pacer.acquire(false);
+            pacer.acquire(true);
+        }
+        Assertions.assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(1));
+    }
+
+}
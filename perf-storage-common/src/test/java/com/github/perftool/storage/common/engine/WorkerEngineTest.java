@@ -0,0 +1,146 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.engine;
+
+import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.config.CommonConfig;
+import com.github.perftool.storage.common.config.StorageType;
+import com.github.perftool.storage.common.distribution.KeyDistributionType;
+import com.github.perftool.storage.common.keyspace.IndexKeySpace;
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import io.micrometer.core.instrument.composite.CompositeMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class WorkerEngineTest {
+
+    @Test
+    void carrierEngineRunsEveryWorkerOnTheBoundedPool() throws InterruptedException {
+        CommonConfig config = config(WorkerEngineType.CARRIER, 2);
+        config.threadRateLimit = 200;
+        WorkerEngine engine = new WorkerEngine(config);
+        Set<String> threads = ConcurrentHashMap.newKeySet();
+        AtomicBoolean overlapped = new AtomicBoolean();
+        CountingWorker[] workers = new CountingWorker[50];
+        for (int i = 0; i < workers.length; i++) {
+            workers[i] = new CountingWorker(config, threads, overlapped);
+            engine.submit(workers[i]);
+        }
+        TimeUnit.MILLISECONDS.sleep(100);
+        int[] before = new int[workers.length];
+        for (int i = 0; i < workers.length; i++) {
+            before[i] = workers[i].reads.get();
+        }
+        TimeUnit.MILLISECONDS.sleep(500);
+        Assertions.assertTrue(threads.size() <= 2, "carrier threads " + threads);
+        Assertions.assertFalse(overlapped.get(), "slots of one worker overlapped");
+        for (int i = 0; i < workers.length; i++) {
+            // paced at 200 slots per second, so about 100 slots each in the half second
+            int slots = workers[i].reads.get() - before[i];
+            Assertions.assertTrue(slots >= 70 && slots <= 120, "worker slots " + slots);
+        }
+    }
+
+    @Test
+    void carrierEngineKeepsSchedulingAfterAFailedSlot() throws InterruptedException {
+        CommonConfig config = config(WorkerEngineType.CARRIER, 1);
+        config.threadRateLimit = 1000;
+        WorkerEngine engine = new WorkerEngine(config);
+        AtomicInteger reads = new AtomicInteger();
+        engine.submit(new CountingWorker(config, ConcurrentHashMap.newKeySet(), new AtomicBoolean()) {
+            @Override
+            public void readData(String id) {
+                reads.incrementAndGet();
+                throw new IllegalStateException("read fail");
+            }
+        });
+        TimeUnit.MILLISECONDS.sleep(200);
+        Assertions.assertTrue(reads.get() > 10, "slots run " + reads.get());
+    }
+
+    private static CommonConfig config(WorkerEngineType engineType, int parallelism) {
+        CommonConfig config = new CommonConfig();
+        config.workerEngine = engineType;
+        config.workerCarrierParallelism = parallelism;
+        config.rateLimitScope = RateLimitScope.THREAD;
+        config.keyDistribution = KeyDistributionType.UNIFORM;
+        config.dataSetSize = 100;
+        config.readRatePercent = 1;
+        return config;
+    }
+
+    private static class CountingWorker extends AbstractStorageThread {
+
+        private final AtomicInteger reads = new AtomicInteger();
+
+        private final AtomicBoolean running = new AtomicBoolean();
+
+        private final Set<String> threads;
+
+        private final AtomicBoolean overlapped;
+
+        CountingWorker(CommonConfig config, Set<String> threads, AtomicBoolean overlapped) {
+            super(config, new MetricFactory(new CompositeMeterRegistry(), StorageType.MYSQL),
+                    new IndexKeySpace(1, 0, 100), null);
+            this.threads = threads;
+            this.overlapped = overlapped;
+        }
+
+        @Override
+        public void readData(String id) {
+            if (!running.compareAndSet(false, true)) {
+                overlapped.set(true);
+            }
+            threads.add(Thread.currentThread().getName());
+            reads.incrementAndGet();
+            running.set(false);
+        }
+
+        @Override
+        public boolean insertData(String id) {
+            return true;
+        }
+
+        @Override
+        public void updateData(String id) {
+        }
+
+        @Override
+        public void deleteData(String id) {
+        }
+
+        @Override
+        public void scanData(String id, int length) {
+        }
+
+        @Override
+        public void multiReadData(List<String> ids) {
+        }
+
+    }
+
+}
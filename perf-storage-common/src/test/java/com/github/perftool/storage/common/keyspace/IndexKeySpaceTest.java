@@ -0,0 +1,86 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.utils.IDUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class IndexKeySpaceTest {
+
+    @Test
+    void indexOfInvertsKey() {
+        IndexKeySpace keys = new IndexKeySpace(0x5eedL, 0, 100_000);
+        Set<String> seen = new HashSet<>();
+        for (long index = 0; index < keys.size(); index++) {
+            String key = keys.key(index);
+            Assertions.assertTrue(IDUtils.isHexId(key), key);
+            Assertions.assertTrue(seen.add(key), "duplicate key " + key);
+            Assertions.assertEquals(index, keys.indexOf(key));
+        }
+    }
+
+    @Test
+    void offsetContinuesThePreviousRun() {
+        IndexKeySpace first = new IndexKeySpace(7, 0, 1000);
+        IndexKeySpace next = new IndexKeySpace(7, 1000, 1000);
+        IndexKeySpace all = new IndexKeySpace(7, 0, 2000);
+        for (long index = 0; index < 1000; index++) {
+            Assertions.assertEquals(all.key(1000 + index), next.key(index));
+            Assertions.assertEquals(index, next.indexOf(all.key(1000 + index)));
+            Assertions.assertEquals(-1, next.indexOf(first.key(index)));
+        }
+    }
+
+    @Test
+    void keysOfOtherSeedsAreNotFound() {
+        IndexKeySpace keys = new IndexKeySpace(1, 0, 1000);
+        IndexKeySpace other = new IndexKeySpace(2, 0, 1000);
+        for (long index = 0; index < 1000; index++) {
+            Assertions.assertEquals(-1, keys.indexOf(other.key(index)));
+        }
+    }
+
+    @Test
+    void foreignKeysAreNotFound() {
+        IndexKeySpace keys = new IndexKeySpace(1, 0, 1000);
+        Assertions.assertEquals(-1, keys.indexOf("not-a-hex-id"));
+        Assertions.assertEquals(-1, keys.indexOf(new IndexKeySpace(1, 0, 2000).key(1500)));
+        SplittableRandom random = new SplittableRandom(3);
+        for (int i = 0; i < 1000; i++) {
+            Assertions.assertEquals(-1, keys.indexOf(IDUtils.formatHexId(random.nextLong(), random.nextLong())));
+        }
+    }
+
+    @Test
+    void indexOfWorksAtLargeIndexes() {
+        IndexKeySpace keys = new IndexKeySpace(-42, 1L << 40, Long.MAX_VALUE - (1L << 40));
+        SplittableRandom random = new SplittableRandom(5);
+        for (int i = 0; i < 1000; i++) {
+            long index = random.nextLong(keys.size());
+            Assertions.assertEquals(index, keys.indexOf(keys.key(index)));
+        }
+    }
+
+}
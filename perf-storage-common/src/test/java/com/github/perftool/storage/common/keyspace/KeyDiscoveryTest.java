@@ -0,0 +1,130 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.utils.IDUtils;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+class KeyDiscoveryTest {
+
+    private static final int RANGE_KEYS = 1000;
+
+    @Test
+    void everyRangeIsDiscoveredOnce() {
+        List<KeyRangeScanner> scanners = new ArrayList<>();
+        for (int range = 0; range < 20; range++) {
+            scanners.add(rangeScanner(range, 0));
+        }
+        scanners.add(sink -> sink.addAll(List.of("other-a", "other-b")));
+        StoredKeySpace keys = KeyDiscovery.discover("test", 4, scanners);
+        Assertions.assertEquals(20 * RANGE_KEYS + 2, keys.size());
+        Set<String> seen = new HashSet<>();
+        for (long i = 0; i < keys.size(); i++) {
+            Assertions.assertTrue(seen.add(keys.key(i)), "duplicate key " + keys.key(i));
+        }
+        Assertions.assertTrue(seen.contains("other-a"));
+        Assertions.assertTrue(seen.contains(IDUtils.formatHexId(19, RANGE_KEYS - 1)));
+    }
+
+    @Test
+    void failedAttemptIsDroppedBeforeTheRetry() {
+        List<KeyRangeScanner> scanners = List.of(rangeScanner(0, 0), rangeScanner(1, 2), rangeScanner(2, 1));
+        StoredKeySpace keys = KeyDiscovery.discover("test", 1, scanners);
+        Assertions.assertEquals(3 * RANGE_KEYS, keys.size());
+        Set<String> seen = new HashSet<>();
+        for (long i = 0; i < keys.size(); i++) {
+            Assertions.assertTrue(seen.add(keys.key(i)), "duplicate key " + keys.key(i));
+        }
+    }
+
+    @Test
+    void rangeFailingEveryAttemptFailsTheDiscovery() {
+        List<KeyRangeScanner> scanners = List.of(rangeScanner(0, 0), rangeScanner(1, 3));
+        Assertions.assertThrows(IllegalStateException.class, () -> KeyDiscovery.discover("test", 2, scanners));
+    }
+
+    @Test
+    void moveKeepsTheOrderAcrossChunks() {
+        StoredKeySpace keys = new StoredKeySpace();
+        keys.add(IDUtils.formatHexId(1, 0));
+        keys.add("other-a");
+        StoredKeySpace moved = new StoredKeySpace();
+        int count = (1 << 20) + 3;
+        for (int i = 0; i < count; i++) {
+            moved.add(IDUtils.formatHexId(2, i));
+        }
+        moved.add("other-b");
+        keys.moveFrom(moved);
+        Assertions.assertEquals(0, moved.size());
+        Assertions.assertEquals(count + 3, keys.size());
+        Assertions.assertEquals(IDUtils.formatHexId(1, 0), keys.key(0));
+        for (int i = 0; i < count; i += 997) {
+            Assertions.assertEquals(IDUtils.formatHexId(2, i), keys.key(1 + i));
+        }
+        Assertions.assertEquals(IDUtils.formatHexId(2, count - 1), keys.key(count));
+        Assertions.assertEquals("other-a", keys.key(count + 1));
+        Assertions.assertEquals("other-b", keys.key(count + 2));
+    }
+
+    @Test
+    void truncateDropsTheKeysAfterTheMark() {
+        StoredKeySpace keys = new StoredKeySpace();
+        keys.add(IDUtils.formatHexId(1, 0));
+        StoredKeySpace.Mark mark = keys.mark();
+        for (int i = 0; i < (1 << 20) + 5; i++) {
+            keys.add(IDUtils.formatHexId(2, i));
+        }
+        keys.add("other-a");
+        keys.truncate(mark);
+        Assertions.assertEquals(1, keys.size());
+        keys.add(IDUtils.formatHexId(3, 0));
+        Assertions.assertEquals(IDUtils.formatHexId(3, 0), keys.key(1));
+    }
+
+    /**
+     * a range of hex keys whose first attempts fail halfway through, after half of the range reached the sink.
+     */
+    private static KeyRangeScanner rangeScanner(int range, int failures) {
+        AtomicInteger attempts = new AtomicInteger();
+        return sink -> {
+            List<String> page = new ArrayList<>();
+            for (int i = 0; i < RANGE_KEYS; i++) {
+                page.add(IDUtils.formatHexId(range, i));
+                if (page.size() == 100) {
+                    sink.addAll(page);
+                    page.clear();
+                }
+                if (i == RANGE_KEYS / 2 && attempts.getAndIncrement() < failures) {
+                    throw new IOException("range " + range + " failed");
+                }
+            }
+            sink.addAll(page);
+        };
+    }
+
+}
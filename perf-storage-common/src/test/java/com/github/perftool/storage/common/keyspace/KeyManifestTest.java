@@ -0,0 +1,210 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+class KeyManifestTest {
+
+    private static final IndexKeySpace KEYS = new IndexKeySpace(3, 0, 100_000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void keysSurviveAReopen() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "mysql://db/table");
+        manifest.putAll(0, KEYS);
+        manifest.clear(7);
+
+        KeyManifest reopened = KeyManifest.open(path, "mysql://db/table");
+        Assertions.assertEquals(100_000, reopened.size());
+        Assertions.assertEquals(99_999, reopened.liveCount());
+        Assertions.assertFalse(reopened.isDense());
+        Assertions.assertTrue(reopened.isEmpty(7));
+        KeySpace keys = reopened.keys();
+        for (long index = 0; index < KEYS.size(); index++) {
+            if (index != 7) {
+                Assertions.assertEquals(KEYS.key(index), keys.key(index));
+            }
+        }
+    }
+
+    @Test
+    void anotherTargetStartsEmpty() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest.open(path, "first").putAll(0, KEYS);
+        KeyManifest other = KeyManifest.open(path, "second");
+        Assertions.assertEquals(0, other.size());
+        Assertions.assertEquals(0, other.liveCount());
+        other.put(3, KEYS.key(0));
+        Assertions.assertTrue(other.isEmpty(0), "records of the previous target must not leak");
+    }
+
+    @Test
+    void corruptHeaderStartsEmpty() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        Files.write(path, new byte[]{1, 2, 3});
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        Assertions.assertEquals(0, manifest.size());
+        manifest.put(0, KEYS.key(0));
+        Assertions.assertEquals(KEYS.key(0), KeyManifest.open(path, "target").keys().key(0));
+    }
+
+    @Test
+    void putAndClearKeepTheCounts() throws IOException {
+        KeyManifest manifest = KeyManifest.open(dir.resolve("keys.manifest"), "target");
+        manifest.put(0, KEYS.key(0));
+        manifest.put(0, KEYS.key(0));
+        manifest.put(4, KEYS.key(4));
+        Assertions.assertEquals(5, manifest.size());
+        Assertions.assertEquals(2, manifest.liveCount());
+        Assertions.assertTrue(manifest.isEmpty(2));
+        manifest.clear(4);
+        manifest.clear(4);
+        manifest.clear(50);
+        Assertions.assertEquals(5, manifest.size());
+        Assertions.assertEquals(1, manifest.liveCount());
+    }
+
+    @Test
+    void concurrentPutsAndClearsKeepTheCounts() throws Exception {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int first = t;
+            threads[t] = new Thread(() -> {
+                for (long index = first; index < 40_000; index += threads.length) {
+                    manifest.put(index, KEYS.key(index));
+                    if (index % 3 == 0) {
+                        manifest.clear(index);
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assertions.assertEquals(40_000, manifest.size());
+        Assertions.assertEquals(26_666, manifest.liveCount());
+        manifest.force();
+        KeyManifest reopened = KeyManifest.open(path, "target");
+        Assertions.assertEquals(40_000, reopened.size());
+        Assertions.assertEquals(26_666, reopened.liveCount());
+        Assertions.assertTrue(reopened.isEmpty(3));
+        Assertions.assertEquals(KEYS.key(39_998), reopened.keys().key(39_998));
+    }
+
+    @Test
+    void changesAfterTheLastForceAreRecounted() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        manifest.putAll(0, new SliceKeySpace(KEYS, 0, 100));
+        manifest.put(100, KEYS.key(100));
+        manifest.clear(5);
+        KeyManifest reopened = KeyManifest.open(path, "target");
+        Assertions.assertEquals(101, reopened.size());
+        Assertions.assertEquals(100, reopened.liveCount());
+        Assertions.assertTrue(reopened.isEmpty(5));
+    }
+
+    @Test
+    void smallManifestGrowsWithItsKeys() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        manifest.putAll(0, new SliceKeySpace(KEYS, 0, 10));
+        manifest.force();
+        Assertions.assertTrue(Files.size(path) <= 1 << 16, "size " + Files.size(path));
+        manifest.putAll(10, new SliceKeySpace(KEYS, 10, 9990));
+        Assertions.assertTrue(Files.size(path) <= 1 << 18, "size " + Files.size(path));
+        Assertions.assertEquals(KEYS.key(3), manifest.keys().key(3));
+        Assertions.assertEquals(KEYS.key(9999), manifest.keys().key(9999));
+    }
+
+    @Test
+    void sampleSpreadsOverTheRecordedKeys() throws IOException {
+        KeyManifest manifest = KeyManifest.open(dir.resolve("keys.manifest"), "target");
+        manifest.putAll(0, new SliceKeySpace(KEYS, 0, 1000));
+        manifest.clear(0);
+        List<String> sample = manifest.sample(10);
+        Assertions.assertEquals(9, sample.size());
+        for (int i = 0; i < sample.size(); i++) {
+            Assertions.assertEquals(KEYS.key(100L * (i + 1)), sample.get(i));
+        }
+        Assertions.assertEquals(3, manifest.sample(3).size());
+    }
+
+    @Test
+    void resetForgetsEveryKey() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        manifest.putAll(0, new SliceKeySpace(KEYS, 0, 1000));
+        manifest.reset();
+        Assertions.assertEquals(0, manifest.size());
+        Assertions.assertTrue(manifest.sample(10).isEmpty());
+        manifest.put(999, KEYS.key(999));
+        KeyManifest reopened = KeyManifest.open(path, "target");
+        Assertions.assertEquals(1000, reopened.size());
+        Assertions.assertEquals(1, reopened.liveCount());
+        Assertions.assertTrue(reopened.isEmpty(0));
+    }
+
+    @Test
+    void nextSequenceIndexFollowsTheRecordedKeys() throws IOException {
+        Path path = dir.resolve("keys.manifest");
+        KeyManifest manifest = KeyManifest.open(path, "target");
+        Assertions.assertEquals(-1, manifest.nextSequenceIndex(7));
+        manifest.putAll(0, new SliceKeySpace(KEYS, 0, 10));
+        manifest.setNextSequenceIndex(7, 25);
+        Assertions.assertEquals(25, manifest.nextSequenceIndex(7));
+        for (long index = 10; index < 15; index++) {
+            manifest.put(index, KEYS.key(index));
+        }
+        manifest.clear(14);
+        manifest.force();
+        KeyManifest reopened = KeyManifest.open(path, "target");
+        Assertions.assertEquals(30, reopened.nextSequenceIndex(7));
+        Assertions.assertEquals(-1, reopened.nextSequenceIndex(8));
+        reopened.reset();
+        Assertions.assertEquals(-1, reopened.nextSequenceIndex(7));
+    }
+
+    @Test
+    void keyOutsideTheHexFormDisablesTheManifest() throws IOException {
+        KeyManifest manifest = KeyManifest.open(dir.resolve("keys.manifest"), "target");
+        manifest.put(0, KEYS.key(0));
+        manifest.put(1, "user-1");
+        Assertions.assertFalse(manifest.isUsable());
+        Assertions.assertEquals(0, manifest.size());
+        manifest.put(2, KEYS.key(2));
+        Assertions.assertEquals(0, manifest.size());
+    }
+
+}
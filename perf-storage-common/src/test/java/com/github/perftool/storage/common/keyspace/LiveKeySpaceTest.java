@@ -0,0 +1,166 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.keyspace;
+
+import com.github.perftool.storage.common.distribution.KeyChooser;
+import com.github.perftool.storage.common.distribution.LatestKeyChooser;
+import com.github.perftool.storage.common.distribution.UniformKeyChooser;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.SplittableRandom;
+
+class LiveKeySpaceTest {
+
+    private static final KeySpace KEYS = new IndexKeySpace(11, 0, Long.MAX_VALUE);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void initialKeysAreLive() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 130);
+        Assertions.assertEquals(130, live.size());
+        Assertions.assertEquals(130, live.liveCount());
+        Assertions.assertEquals(KEYS.key(129), live.key(129));
+        SplittableRandom random = new SplittableRandom(1);
+        Set<Long> sampled = new HashSet<>();
+        for (int i = 0; i < 10_000; i++) {
+            long index = live.sampleLive(random, new UniformKeyChooser());
+            Assertions.assertTrue(index >= 0 && index < 130);
+            sampled.add(index);
+        }
+        Assertions.assertEquals(130, sampled.size());
+    }
+
+    @Test
+    void allocatedIndexIsSampledOnlyOncePublished() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 0);
+        SplittableRandom random = new SplittableRandom(1);
+        long index = live.allocate();
+        Assertions.assertEquals(0, index);
+        Assertions.assertEquals(1, live.size());
+        Assertions.assertEquals(0, live.liveCount());
+        Assertions.assertEquals(-1, live.sampleLive(random, new UniformKeyChooser()));
+        live.publish(index);
+        live.publish(index);
+        Assertions.assertEquals(1, live.liveCount());
+        Assertions.assertEquals(0, live.sampleLive(random, new UniformKeyChooser()));
+    }
+
+    @Test
+    void retireRemovesEachIndexOnce() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 1000);
+        SplittableRandom random = new SplittableRandom(2);
+        Set<Long> retired = new HashSet<>();
+        for (int i = 0; i < 1000; i++) {
+            long index = live.retire(random, new UniformKeyChooser());
+            Assertions.assertTrue(retired.add(index), "retired twice " + index);
+        }
+        Assertions.assertEquals(0, live.liveCount());
+        Assertions.assertEquals(1000, live.size());
+        Assertions.assertEquals(-1, live.retire(random, new UniformKeyChooser()));
+        Assertions.assertEquals(-1, live.sampleLive(random, new UniformKeyChooser()));
+    }
+
+    @Test
+    void discardCountsOnlyLiveIndexes() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 100);
+        live.discard(5);
+        live.discard(5);
+        Assertions.assertEquals(99, live.liveCount());
+        Assertions.assertEquals(6, live.sampleLive(new SplittableRandom(1), fixed(5)));
+    }
+
+    @Test
+    void deadSampleMovesToTheNextLiveIndex() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 1000);
+        kill(live, 10, 200);
+        Assertions.assertEquals(200, live.sampleLive(new SplittableRandom(1), fixed(10)));
+        Assertions.assertEquals(9, live.sampleLive(new SplittableRandom(1), fixed(9)));
+    }
+
+    @Test
+    void deadTopStepsDownInsteadOfWrapping() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 1000);
+        kill(live, 900, 1000);
+        Assertions.assertEquals(899, live.sampleLive(new SplittableRandom(1), fixed(950)));
+        SplittableRandom random = new SplittableRandom(3);
+        KeyChooser latest = new LatestKeyChooser(0.99);
+        long highestLive = 0;
+        long bottom = 0;
+        for (int i = 0; i < 10_000; i++) {
+            long index = live.sampleLive(random, latest);
+            Assertions.assertTrue(index < 900);
+            if (index == 899) {
+                highestLive++;
+            } else if (index < 100) {
+                bottom++;
+            }
+        }
+        // the retired top hundred hold about two thirds of the latest samples, they land on the highest live key
+        Assertions.assertTrue(highestLive > 6000, "latest must stay at the top, got " + highestLive);
+        Assertions.assertTrue(bottom < 500, "samples wrapped to the bottom " + bottom);
+    }
+
+    @Test
+    void sparseKeySpaceFallsBackToAFullScan() {
+        LiveKeySpace live = new LiveKeySpace(KEYS, 200_000);
+        kill(live, 0, 5);
+        kill(live, 6, 200_000);
+        Assertions.assertEquals(1, live.liveCount());
+        Assertions.assertEquals(5, live.sampleLive(new SplittableRandom(1), fixed(150_000)));
+        Assertions.assertEquals(5, live.retire(new SplittableRandom(1), fixed(0)));
+        Assertions.assertEquals(-1, live.sampleLive(new SplittableRandom(1), fixed(0)));
+    }
+
+    @Test
+    void manifestFollowsPublishAndRetire() throws IOException {
+        KeyManifest manifest = KeyManifest.open(dir.resolve("keys.manifest"), "target");
+        LiveKeySpace live = new LiveKeySpace(KEYS, 0);
+        live.useManifest(manifest);
+        for (int i = 0; i < 3; i++) {
+            live.publish(live.allocate());
+        }
+        Assertions.assertEquals(3, manifest.liveCount());
+        Assertions.assertEquals(KEYS.key(2), manifest.keys().key(2));
+        Assertions.assertEquals(1, live.retire(new SplittableRandom(1), fixed(1)));
+        Assertions.assertTrue(manifest.isEmpty(1));
+        Assertions.assertEquals(2, manifest.liveCount());
+        Assertions.assertEquals(3, manifest.size());
+    }
+
+    private static void kill(LiveKeySpace live, long from, long to) {
+        SplittableRandom random = new SplittableRandom(1);
+        for (long index = from; index < to; index++) {
+            Assertions.assertEquals(index, live.retire(random, fixed(index)));
+        }
+    }
+
+    private static KeyChooser fixed(long index) {
+        return (random, itemCount) -> index;
+    }
+
+}
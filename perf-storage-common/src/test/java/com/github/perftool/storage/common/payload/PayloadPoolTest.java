@@ -0,0 +1,54 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.SplittableRandom;
+
+class PayloadPoolTest {
+
+    @Test
+    void sharedPoolIsReusedForTheSameSettings() {
+        PayloadPool pool = PayloadPool.shared(PayloadKind.TEXT, 1 << 12, 5, 2);
+        Assertions.assertTrue(pool == PayloadPool.shared(PayloadKind.TEXT, 1 << 12, 5, 2));
+    }
+
+    @Test
+    void sharedPoolFollowsEverySetting() {
+        PayloadPool pool = PayloadPool.shared(PayloadKind.TEXT, 1 << 12, 6, 2);
+        Assertions.assertFalse(pool == PayloadPool.shared(PayloadKind.BINARY, 1 << 12, 6, 2));
+        Assertions.assertFalse(pool == PayloadPool.shared(PayloadKind.TEXT, 1 << 13, 6, 2));
+        Assertions.assertFalse(pool == PayloadPool.shared(PayloadKind.TEXT, 1 << 12, 7, 2));
+        Assertions.assertFalse(pool == PayloadPool.shared(PayloadKind.TEXT, 1 << 12, 6, 3));
+        Assertions.assertEquals(1 << 13, PayloadPool.shared(PayloadKind.TEXT, 1 << 13, 6, 2)
+                .nextString(new SplittableRandom(1), 1 << 13).length());
+    }
+
+    @Test
+    void seededPoolsAreReproducible() {
+        PayloadPool first = new PayloadPool(PayloadKind.BINARY, 1 << 12, 9, 1);
+        PayloadPool second = new PayloadPool(PayloadKind.BINARY, 1 << 12, 9, 1);
+        Assertions.assertEquals(first.nextString(new SplittableRandom(3), 100),
+                second.nextString(new SplittableRandom(3), 100));
+    }
+
+}
@@ -0,0 +1,110 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.payload;
+
+import com.github.perftool.storage.common.config.StorageType;
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+class PayloadVerifierTest {
+
+    private static final String KEY = "0123456789abcdef0123456789abcdef";
+
+    private SimpleMeterRegistry registry;
+
+    private PayloadVerifier verifier;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        verifier = new PayloadVerifier(new PayloadPool(PayloadKind.TEXT, 1 << 16, 1, 0),
+                new MetricFactory(registry, StorageType.MYSQL));
+    }
+
+    @Test
+    void valueCarriesVersionAndChecksum() {
+        String value = verifier.value(KEY, 3, 100);
+        Assertions.assertEquals(100, value.length());
+        Assertions.assertEquals("00000003", value.substring(0, 8));
+        Assertions.assertEquals(value, verifier.value(KEY, 3, 100));
+        Assertions.assertEquals(VerifyResult.OK, verifier.verify(KEY, 3, value));
+        Assertions.assertEquals(VerifyResult.OK, verifier.verify(KEY, 2, value));
+        Assertions.assertEquals(2.0, count(VerifyResult.OK), 0);
+    }
+
+    @Test
+    void shortValueIsPaddedToTheHeader() {
+        String value = verifier.value(KEY, 0, 4);
+        Assertions.assertEquals(PayloadVerifier.HEADER_LENGTH, value.length());
+        Assertions.assertEquals(VerifyResult.OK, verifier.verify(KEY, 0, value));
+    }
+
+    @Test
+    void corruptValueIsAMismatch() {
+        String value = verifier.value(KEY, 0, 100);
+        char flipped = value.charAt(50) == 'a' ? 'b' : 'a';
+        String corrupt = value.substring(0, 50) + flipped + value.substring(51);
+        Assertions.assertEquals(VerifyResult.MISMATCH, verifier.verify(KEY, 0, corrupt));
+        Assertions.assertEquals(VerifyResult.MISMATCH, verifier.verify(KEY, 0, value.substring(0, 99)));
+        Assertions.assertEquals(VerifyResult.MISMATCH, verifier.verify(KEY, 0, value.substring(0, 10)));
+        String otherKey = "f" + KEY.substring(1);
+        Assertions.assertEquals(VerifyResult.MISMATCH, verifier.verify(otherKey, 0, value));
+        Assertions.assertEquals(VerifyResult.MISMATCH, verifier.verify(KEY, 0, "x".repeat(100)));
+        Assertions.assertEquals(5.0, count(VerifyResult.MISMATCH), 0);
+    }
+
+    @Test
+    void absentValueIsMissing() {
+        Assertions.assertEquals(VerifyResult.MISSING, verifier.verify(KEY, 0, null));
+        Assertions.assertEquals(1.0, count(VerifyResult.MISSING), 0);
+    }
+
+    @Test
+    void olderVersionIsStale() {
+        Assertions.assertEquals(0, verifier.expectedVersion(KEY));
+        Assertions.assertEquals(1, verifier.nextVersion(KEY));
+        String first = verifier.value(KEY, 0, 64);
+        String second = verifier.value(KEY, verifier.nextVersion(KEY), 64);
+        verifier.updated(KEY, second);
+        Assertions.assertEquals(1, verifier.expectedVersion(KEY));
+        Assertions.assertEquals(2, verifier.nextVersion(KEY));
+        Assertions.assertEquals(VerifyResult.STALE, verifier.verify(KEY, verifier.expectedVersion(KEY), first));
+        Assertions.assertEquals(VerifyResult.OK, verifier.verify(KEY, verifier.expectedVersion(KEY), second));
+        Assertions.assertEquals(1.0, count(VerifyResult.STALE), 0);
+    }
+
+    @Test
+    void olderUpdateDoesNotLowerTheVersion() {
+        verifier.updated(KEY, verifier.value(KEY, 5, 32));
+        verifier.updated(KEY, verifier.value(KEY, 2, 32));
+        Assertions.assertEquals(5, verifier.expectedVersion(KEY));
+        verifier.updated(KEY, "no header");
+        Assertions.assertEquals(5, verifier.expectedVersion(KEY));
+    }
+
+    private double count(VerifyResult result) {
+        return registry.find("perf_storage_verify_count").tag("result", result.name().toLowerCase()).counter()
+                .count();
+    }
+
+}
@@ -0,0 +1,141 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.common.preset;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+class PresetCheckpointTest {
+
+    private static final PresetCheckpoint.Plan PLAN = new PresetCheckpoint.Plan(42, 1000, 5000);
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void newCheckpointHasNoPlan() throws IOException {
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(dir.resolve("preset.checkpoint"), "target");
+        Assertions.assertNull(checkpoint.plan());
+        Assertions.assertFalse(checkpoint.isDone("t0", 0, 1000));
+    }
+
+    @Test
+    void killedPresetResumesItsPlan() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "target");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+        checkpoint.markDone("t1", 1000, 1000);
+        // killed here, neither finished nor completed
+
+        PresetCheckpoint resumed = PresetCheckpoint.open(path, "target");
+        Assertions.assertEquals(PLAN, resumed.plan());
+        Assertions.assertTrue(resumed.isDone("t0", 0, 1000));
+        Assertions.assertTrue(resumed.isDone("t1", 1000, 1000));
+        Assertions.assertFalse(resumed.isDone("t0", 1000, 1000));
+        Assertions.assertFalse(resumed.isDone("t1", 1000, 500));
+
+        resumed.markDone("t0", 2000, 1000);
+        PresetCheckpoint again = PresetCheckpoint.open(path, "target");
+        Assertions.assertEquals(PLAN, again.plan());
+        Assertions.assertTrue(again.isDone("t0", 0, 1000));
+        Assertions.assertTrue(again.isDone("t0", 2000, 1000));
+    }
+
+    @Test
+    void tornLinesAreSkipped() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "target");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+        Files.writeString(path, "done t1 1x 1000\ndone t1 2000", StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        PresetCheckpoint resumed = PresetCheckpoint.open(path, "target");
+        Assertions.assertEquals(PLAN, resumed.plan());
+        Assertions.assertTrue(resumed.isDone("t0", 0, 1000));
+        Assertions.assertFalse(resumed.isDone("t1", 2000, 1000));
+
+        resumed.markDone("t1", 2000, 1000);
+        PresetCheckpoint again = PresetCheckpoint.open(path, "target");
+        Assertions.assertTrue(again.isDone("t0", 0, 1000));
+        Assertions.assertTrue(again.isDone("t1", 2000, 1000), "a line after a torn line must be kept");
+    }
+
+    @Test
+    void checkpointOfAnotherTargetIsDiscarded() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "first");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+
+        PresetCheckpoint other = PresetCheckpoint.open(path, "second");
+        Assertions.assertNull(other.plan());
+        Assertions.assertFalse(other.isDone("t0", 0, 1000));
+    }
+
+    @Test
+    void beginDropsThePreviousPlan() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "target");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+        PresetCheckpoint.Plan next = new PresetCheckpoint.Plan(43, 0, 100);
+        checkpoint.begin(next);
+        Assertions.assertFalse(checkpoint.isDone("t0", 0, 1000));
+
+        PresetCheckpoint resumed = PresetCheckpoint.open(path, "target");
+        Assertions.assertEquals(next, resumed.plan());
+        Assertions.assertFalse(resumed.isDone("t0", 0, 1000));
+    }
+
+    @Test
+    void finishedPresetRemovesTheCheckpoint() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "target");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+        checkpoint.markFinished();
+        checkpoint.complete();
+        Assertions.assertFalse(Files.exists(path));
+        Assertions.assertNull(checkpoint.plan());
+        Assertions.assertNull(PresetCheckpoint.open(path, "target").plan());
+    }
+
+    @Test
+    void unfinishedPresetKeepsTheCheckpoint() throws IOException {
+        Path path = dir.resolve("preset.checkpoint");
+        PresetCheckpoint checkpoint = PresetCheckpoint.open(path, "target");
+        checkpoint.begin(PLAN);
+        checkpoint.markDone("t0", 0, 1000);
+        checkpoint.complete();
+        Assertions.assertTrue(Files.exists(path));
+        PresetCheckpoint resumed = PresetCheckpoint.open(path, "target");
+        Assertions.assertEquals(PLAN, resumed.plan());
+        Assertions.assertTrue(resumed.isDone("t0", 0, 1000));
+    }
+
+}
@@ -55,4 +55,58 @@ public class MysqlConfig extends QLCommonConfig {
     @Value("${MYSQL_CONNECT_TIMEOUT:-1}")
     public int connectTimeout;
 
+    @Value("${MYSQL_POOL_SWEEP_SIZES:}")
+    public String poolSweepSizes;
+
+    @Value("${MYSQL_POOL_SWEEP_WARMUP_SECONDS:10}")
+    public int poolSweepWarmupSeconds;
+
+    @Value("${MYSQL_POOL_SWEEP_STEP_SECONDS:60}")
+    public int poolSweepStepSeconds;
+
+    @Value("${MYSQL_CONNECTION_MODE:POOLED}")
+    public MysqlConnectionMode connectionMode;
+
+    @Value("${MYSQL_SERVER_PREPARE_ENABLE:false}")
+    public boolean serverPrepareEnable;
+
+    @Value("${MYSQL_FETCH_MODE:BUFFERED}")
+    public MysqlFetchMode fetchMode;
+
+    @Value("${MYSQL_FETCH_SIZE:100}")
+    public int fetchSize;
+
+    @Value("${MYSQL_WRITE_BATCH_SIZE:1}")
+    public int writeBatchSize;
+
+    @Value("${MYSQL_WRITE_TRANSACTION_SIZE:0}")
+    public int writeTransactionSize;
+
+    @Value("${MYSQL_TRANSACTION_RATE_PERCENT:0.0}")
+    public double transactionRatePercent;
+
+    @Value("${MYSQL_TRANSACTION_ROWS:5}")
+    public int transactionRows;
+
+    @Value("${MYSQL_TRANSACTION_ISOLATION:REPEATABLE_READ}")
+    public MysqlIsolationLevel transactionIsolation;
+
+    @Value("${MYSQL_TRANSACTION_HOT_ROWS:0}")
+    public int transactionHotRows;
+
+    @Value("${MYSQL_TRANSACTION_HOT_RATE_PERCENT:0.0}")
+    public double transactionHotRatePercent;
+
+    @Value("${MYSQL_TRANSACTION_MAX_RETRIES:3}")
+    public int transactionMaxRetries;
+
+    @Value("${MYSQL_PRESET_MODE:SINGLE}")
+    public MysqlPresetMode presetMode;
+
+    @Value("${MYSQL_PRESET_BATCH_ROWS:500}")
+    public int presetBatchRows;
+
+    @Value("${MYSQL_PRESET_TRANSACTION_ROWS:10000}")
+    public int presetTransactionRows;
+
 }
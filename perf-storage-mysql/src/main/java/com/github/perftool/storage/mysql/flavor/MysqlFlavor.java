@@ -33,6 +33,22 @@ public class MysqlFlavor extends DefaultDBFlavor {
         this.mysqlConfig = mysqlConfig;
     }
 
+    /**
+     * LOAD DATA of tab separated rows in the column order of the INSERT statements, the file name is a
+     * placeholder for the stream handed to the driver.
+     */
+    public String loadDataStatement(String tableName) {
+        return "LOAD DATA LOCAL INFILE 'perf-storage-preset' INTO TABLE " + tableName
+                + " FIELDS TERMINATED BY '\\t' LINES TERMINATED BY '\\n' (" + columnList() + ")";
+    }
+
+    /**
+     * the read of one row taking an exclusive lock on it until the transaction ends.
+     */
+    public String lockingReadStatement(String tableName) {
+        return readStatement(tableName) + " FOR UPDATE";
+    }
+
     @Override
     public String createDBStatement(String dbName) {
         return null;
@@ -19,10 +19,24 @@
 
 package com.github.perftool.storage.mysql.service;
 
+import com.github.perftool.storage.common.engine.WorkerEngine;
+import com.github.perftool.storage.common.keyspace.KeyDiscovery;
+import com.github.perftool.storage.common.keyspace.KeyRangeScanner;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.StoredKeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import com.github.perftool.storage.common.preset.ChunkLoader;
+import com.github.perftool.storage.common.preset.PresetCheckpoint;
+import com.github.perftool.storage.common.preset.PresetRunner;
+import com.github.perftool.storage.common.service.VerifyService;
+import com.github.perftool.storage.common.utils.IDUtils;
 import com.github.perftool.storage.mysql.config.MysqlConfig;
+import com.github.perftool.storage.mysql.config.MysqlConnectionMode;
+import com.github.perftool.storage.mysql.config.MysqlPresetMode;
 import com.zaxxer.hikari.HikariConfig;
 import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
@@ -33,13 +47,9 @@ import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
-import java.util.HashSet;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -48,7 +58,13 @@ public class MysqlService {
     @Autowired
     private MysqlConfig mysqlConfig;
 
-    private DataSource dataSource;
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    @Autowired
+    private VerifyService verifyService;
+
+    private HikariDataSource dataSource;
 
     public void initDatasource() {
         this.dataSource = createDatasource();
@@ -57,54 +73,125 @@ public class MysqlService {
         }
     }
 
-    public void presetData(MetricFactory metricFactory, List<String> keys) {
+    /**
+     * loads every table at once on one pool, in chunks of MYSQL_PRESET_TRANSACTION_ROWS keys.
+     */
+    public void presetData(MetricFactory metricFactory, KeySpace keys, PresetCheckpoint checkpoint) {
+        PresetRunner presetRunner = new PresetRunner("mysql " + mysqlConfig.presetMode, mysqlConfig.presetThreadNum,
+                metricFactory, checkpoint);
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(mysqlConfig, metricFactory);
         for (int i = 0; i < mysqlConfig.tableCount; i++) {
-            this.presetData(metricFactory, keys, i);
+            MysqlStorageThread mysqlStorageThread =
+                    new MysqlStorageThread(dataSource, metricFactory, mysqlConfig, keys, i, payloadVerifier);
+            ChunkLoader loader = switch (mysqlConfig.presetMode) {
+                case BATCH -> mysqlStorageThread::insertBatch;
+                case LOAD_DATA -> mysqlStorageThread::loadData;
+                default -> mysqlStorageThread::insertEach;
+            };
+            presetRunner.add(mysqlConfig.tableNamePrefix + i, keys, mysqlConfig.presetTransactionRows, loader);
         }
+        presetRunner.run();
+    }
+
+    /**
+     * identifies the tables the keys are stored in, for the key manifest fingerprint.
+     */
+    public String datasetIdentity() {
+        return mysqlConfig.host + ":" + mysqlConfig.port + "/" + mysqlConfig.dbName + "/" + mysqlConfig.tableNamePrefix;
     }
 
-    public Set<String> listKeys() {
-        Set<String> set = new HashSet<>();
+    /**
+     * reads the primary keys in ranges split at hex prefixes, each range pages with keyset pagination so no
+     * query holds more than a page in the driver.
+     */
+    public StoredKeySpace listKeys() {
+        List<String> points = IDUtils.hexSplitPoints(mysqlConfig.keyDiscoveryThreadNum);
+        List<KeyRangeScanner> scanners = new ArrayList<>();
+        for (int i = 0; i <= points.size(); i++) {
+            String after = i == 0 ? "" : points.get(i - 1);
+            String last = i == points.size() ? null : points.get(i);
+            scanners.add(sink -> listKeys(after, last, sink));
+        }
+        return KeyDiscovery.discover("mysql", mysqlConfig.keyDiscoveryThreadNum, scanners);
+    }
+
+    /**
+     * @return how many of the keys are stored in the first table, the key manifest checks a sample with it
+     */
+    public long countStored(List<String> keys) {
+        if (keys.isEmpty()) {
+            return 0;
+        }
+        String sql = "select count(*) from " + mysqlConfig.tableNamePrefix + "0 where id in ("
+                + String.join(",", Collections.nCopies(keys.size(), "?")) + ")";
         try (
                 Connection conn = dataSource.getConnection();
-                PreparedStatement stmt = conn.prepareStatement("select id from "
-                        + mysqlConfig.tableNamePrefix + "0")
+                PreparedStatement stmt = conn.prepareStatement(sql)
         ) {
-            ResultSet ret = stmt.executeQuery();
-            while (ret.next()) {
-                set.add(ret.getString("id"));
+            for (int i = 0; i < keys.size(); i++) {
+                stmt.setString(i + 1, keys.get(i));
+            }
+            try (ResultSet ret = stmt.executeQuery()) {
+                ret.next();
+                return ret.getLong(1);
             }
         } catch (SQLException e) {
-            log.error("read db data fail. ", e);
+            throw new IllegalStateException("count mysql keys fail", e);
         }
-        return set;
     }
 
-    private void presetData(MetricFactory metricFactory, List<String> keys, int tableIdx) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(mysqlConfig.presetThreadNum);
-        MysqlStorageThread mysqlStorageThread =
-                new MysqlStorageThread(dataSource, metricFactory, mysqlConfig, keys, tableIdx);
-        List<Callable<Object>> callableList =
-                keys.stream().map(s -> Executors.callable(() -> mysqlStorageThread.insertData(s)))
-                        .collect(Collectors.toList());
-        try {
-            threadPool.invokeAll(callableList);
-        } catch (InterruptedException e) {
-            log.error("preset s3 data failed ", e);
+    private void listKeys(String after, String last, StoredKeySpace sink) throws SQLException {
+        int pageSize = mysqlConfig.keyDiscoveryPageSize;
+        String sql = "select id from " + mysqlConfig.tableNamePrefix + "0 where id > ?"
+                + (last == null ? "" : " and id <= ?") + " order by id limit ?";
+        try (
+                Connection conn = dataSource.getConnection();
+                PreparedStatement stmt = conn.prepareStatement(sql)
+        ) {
+            String cursor = after;
+            while (true) {
+                int idx = 1;
+                stmt.setString(idx++, cursor);
+                if (last != null) {
+                    stmt.setString(idx++, last);
+                }
+                stmt.setInt(idx, pageSize);
+                List<String> page = new ArrayList<>(pageSize);
+                try (ResultSet ret = stmt.executeQuery()) {
+                    while (ret.next()) {
+                        page.add(ret.getString(1));
+                    }
+                }
+                sink.addAll(page);
+                if (page.size() < pageSize) {
+                    return;
+                }
+                cursor = page.get(page.size() - 1);
+            }
         }
     }
 
-    public void boot(MetricFactory metricFactory, List<String> keys) {
+    public void boot(MetricFactory metricFactory, KeySpace keys) {
+        WorkerEngine workerEngine = new WorkerEngine(mysqlConfig);
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(mysqlConfig, metricFactory);
         for (int i = 0; i < mysqlConfig.tableCount; i++) {
             for (int j = 0; j < mysqlConfig.threadNum; j++) {
-                new MysqlStorageThread(dataSource, metricFactory, mysqlConfig,
-                        keys, i).start();
+                workerEngine.submit(new MysqlStorageThread(dataSource, metricFactory, mysqlConfig,
+                        keys, i, payloadVerifier), mysqlConfig.tableNamePrefix + i);
             }
         }
+        if (!mysqlConfig.poolSweepSizes.isBlank()) {
+            new PoolSizeSweep(mysqlConfig, dataSource, metricFactory, heldConnections()).run();
+        }
     }
 
-    public DataSource createDatasource() {
+    /**
+     * the pool publishes the hikaricp metrics, like the connection wait time, to the meter registry.
+     */
+    public HikariDataSource createDatasource() {
         HikariConfig hikariConfig = new HikariConfig();
+        hikariConfig.setPoolName("perf-storage-mysql");
+        hikariConfig.setMetricRegistry(meterRegistry);
         hikariConfig.setDriverClassName("org.mariadb.jdbc.Driver");
         StringBuilder jdbcUrlBuilder = new StringBuilder();
         jdbcUrlBuilder.append("jdbc:mariadb://").append(mysqlConfig.host).append(":").append(mysqlConfig.port);
@@ -112,6 +199,12 @@ public class MysqlService {
         jdbcUrlBuilder.append("&user=").append(mysqlConfig.user);
         jdbcUrlBuilder.append("&password=").append(mysqlConfig.password);
         jdbcUrlBuilder.append("&allowPublicKeyRetrieval=true");
+        if (mysqlConfig.presetMode == MysqlPresetMode.LOAD_DATA) {
+            jdbcUrlBuilder.append("&allowLocalInfile=true");
+        }
+        if (mysqlConfig.serverPrepareEnable) {
+            jdbcUrlBuilder.append("&useServerPrepStmts=true");
+        }
         if (mysqlConfig.socketTimeout != -1) {
             jdbcUrlBuilder.append("&socketTimeout=").append(mysqlConfig.socketTimeout);
         }
@@ -119,10 +212,30 @@ public class MysqlService {
             jdbcUrlBuilder.append("&connectTimeout=").append(mysqlConfig.connectTimeout);
         }
         hikariConfig.setJdbcUrl(jdbcUrlBuilder.toString());
-        hikariConfig.setMaximumPoolSize(mysqlConfig.maximumPoolSize);
+        int poolSize = mysqlConfig.maximumPoolSize;
+        int heldConnections = heldConnections();
+        if (heldConnections > 0) {
+            // every worker holds connections for the whole run, keep some for the preset and the key scan
+            int heldSize = heldConnections + mysqlConfig.maximumPoolSize;
+            log.info("workers hold {} connections, raise the pool size from {} to {}", heldConnections, poolSize,
+                    heldSize);
+            poolSize = heldSize;
+        }
+        hikariConfig.setMaximumPoolSize(poolSize);
         return new HikariDataSource(hikariConfig);
     }
 
+    /**
+     * connections the workers hold for the whole run, a pinned one, one for batched writes and one for
+     * transactions per worker.
+     */
+    private int heldConnections() {
+        int heldPerWorker = (mysqlConfig.connectionMode == MysqlConnectionMode.PINNED ? 1 : 0)
+                + (mysqlConfig.writeBatchSize > 1 ? 1 : 0)
+                + (mysqlConfig.transactionRatePercent > 0 ? 1 : 0);
+        return mysqlConfig.tableCount * mysqlConfig.threadNum * heldPerWorker;
+    }
+
     private void initPerfTable(DataSource dataSource, String tableName) {
         try (
                 Connection conn = dataSource.getConnection();
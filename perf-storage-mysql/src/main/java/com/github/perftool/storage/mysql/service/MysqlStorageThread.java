@@ -20,40 +20,205 @@
 package com.github.perftool.storage.mysql.service;
 
 import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.distribution.SizeDistribution;
+import com.github.perftool.storage.common.distribution.SizeDistributionFactory;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.metrics.MetricBean;
 import com.github.perftool.storage.common.metrics.MetricFactory;
 import com.github.perftool.storage.common.module.OperationType;
-import com.github.perftool.storage.common.utils.RandomUtils;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
 import com.github.perftool.storage.mysql.config.MysqlConfig;
+import com.github.perftool.storage.mysql.config.MysqlConnectionMode;
+import com.github.perftool.storage.mysql.config.MysqlFetchMode;
 import com.github.perftool.storage.mysql.flavor.MysqlFlavor;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Timer;
 import lombok.extern.slf4j.Slf4j;
 
 import javax.sql.DataSource;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.sql.Connection;
 import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
 
 
+/**
+ * In verify mode field1 holds the verifiable value, scoped by table as every table stores every key. The
+ * inserts and deletes of the worker loop span every table like the preset does, the other operations pick a
+ * random table.
+ * <p>
+ * With MYSQL_CONNECTION_MODE PINNED the worker loop keeps one connection and a prepared statement per
+ * operation and table, calls from other threads, like the preset pools, still borrow from the pool. The time
+ * spent borrowing connections is recorded apart from the operation latency.
+ * <p>
+ * With MYSQL_WRITE_BATCH_SIZE above one the worker loop buffers its inserts and updates and writes every
+ * MYSQL_WRITE_BATCH_SIZE of them with one executeBatch on a connection of its own, committing once
+ * MYSQL_WRITE_TRANSACTION_SIZE rows were written, or every batch in autocommit when it is zero. A batch is
+ * recorded as BATCH_INSERT or BATCH_UPDATE and each of its rows as an INSERT or UPDATE taking an equal share of
+ * the batch latency, so the row timers count rows without multiplying the batch latency. Buffered inserts are
+ * published to the other workers once they are written and committed.
+ * <p>
+ * Reads, scans and multi reads consume every column of every row. The time until the driver returns the result
+ * is recorded as the query latency and the time reading its rows as the decode latency, with MYSQL_FETCH_MODE
+ * STREAMING the decode latency includes fetching the rows after the first MYSQL_FETCH_SIZE.
+ * <p>
+ * With MYSQL_TRANSACTION_RATE_PERCENT the worker loop also runs transactions locking MYSQL_TRANSACTION_ROWS
+ * rows of a table one after the other with SELECT ... FOR UPDATE and updating each, on a connection of its own
+ * at MYSQL_TRANSACTION_ISOLATION. Rows are locked in the order they are chosen, so concurrent transactions
+ * deadlock like an application which does not order its locks would. MYSQL_TRANSACTION_HOT_RATE_PERCENT of
+ * the rows come from the first MYSQL_TRANSACTION_HOT_ROWS keys to add contention. A transaction failing on a
+ * deadlock or a lock wait timeout is rolled back and retried up to MYSQL_TRANSACTION_MAX_RETRIES times, its
+ * latency runs from the first attempt to the commit.
+ */
 @Slf4j
 public class MysqlStorageThread extends AbstractStorageThread {
 
+    private static final String VERIFIED_FIELD = "field1";
+
+    private static final String CONNECTION_ACQUIRE_LATENCY_NAME = "perf_storage_connection_acquire_latency";
+
+    private static final String QUERY_LATENCY_NAME = "perf_storage_query_latency";
+
+    private static final String DECODE_LATENCY_NAME = "perf_storage_decode_latency";
+
+    private static final String LOCKING_READ = "LOCKING_READ";
+
+    private static final int ER_LOCK_WAIT_TIMEOUT = 1205;
+
+    private static final int ER_LOCK_DEADLOCK = 1213;
+
     private final ConcurrentMap<String, String> cachedStatements = new ConcurrentHashMap<>();
     private final MysqlFlavor mysqlFlavor;
     private final MysqlConfig mysqlConfig;
     private final DataSource dataSource;
+    private final SizeDistribution fieldSizeDistribution;
 
     private final int tableIdx;
 
+    private final String[] tableNames;
+
+    private final Timer connectionAcquireTimer;
+
+    private final Map<OperationType, Timer> queryTimers = new EnumMap<>(OperationType.class);
+
+    private final Map<OperationType, Timer> decodeTimers = new EnumMap<>(OperationType.class);
+
+    private final boolean streaming;
+
+    private final boolean pinned;
+
+    /**
+     * connection of the worker loop in pinned mode, only used by the worker thread.
+     */
+    private Connection pinnedConnection;
+
+    private final Map<String, PreparedStatement> pinnedStatements = new HashMap<>();
+
+    private final boolean batching;
+
+    private final MetricBean batchInsertMetricBean;
+
+    private final MetricBean batchUpdateMetricBean;
+
+    private final List<String> pendingInserts = new ArrayList<>();
+
+    private final List<String> pendingUpdates = new ArrayList<>();
+
+    private int pendingUpdateTable;
+
+    /**
+     * connection of the batched writes of the worker loop, held across the batches of a transaction.
+     */
+    private Connection batchConnection;
+
+    private final Map<String, PreparedStatement> batchStatements = new HashMap<>();
+
+    private int transactionRows;
+
+    /**
+     * verifiable values of the updates written in the open transaction, applied once it commits.
+     */
+    private final List<String[]> uncommittedUpdates = new ArrayList<>();
+
+    /**
+     * publishes of the buffered inserts, moved to {@link #uncommittedPublishes} once their batch is written.
+     */
+    private final List<Runnable> pendingPublishes = new ArrayList<>();
+
+    /**
+     * publishes of the inserts written in the open transaction, run once it commits.
+     */
+    private final List<Runnable> uncommittedPublishes = new ArrayList<>();
+
+    private final MetricBean transactionMetricBean;
+
+    private final Timer commitTimer;
+
+    private final Counter rollbackCounter;
+
+    private final Counter deadlockCounter;
+
+    private final Counter lockWaitTimeoutCounter;
+
+    private final Counter retryCounter;
+
+    /**
+     * connection of the transactions of the worker loop, never in autocommit.
+     */
+    private Connection transactionConnection;
+
+    private final Map<String, PreparedStatement> transactionStatements = new HashMap<>();
+
+    /**
+     * verifiable values of the updates of the running transaction.
+     */
+    private final List<String[]> transactionUpdates = new ArrayList<>();
+
     public MysqlStorageThread(DataSource dataSource, MetricFactory metricFactory,
-                              MysqlConfig mysqlConfig, List<String> ids, int tableIdx) {
-        super(mysqlConfig, metricFactory, ids);
+                              MysqlConfig mysqlConfig, KeySpace keySpace, int tableIdx,
+                              PayloadVerifier payloadVerifier) {
+        super(mysqlConfig, metricFactory, keySpace, payloadVerifier);
         this.mysqlFlavor = new MysqlFlavor(mysqlConfig);
         this.mysqlConfig = mysqlConfig;
+        this.fieldSizeDistribution = SizeDistributionFactory.create(mysqlConfig.fieldValueLengthDistribution,
+                mysqlConfig.fieldValueLength);
         this.dataSource = dataSource;
         this.tableIdx = tableIdx;
+        this.tableNames = new String[mysqlConfig.tableCount];
+        this.connectionAcquireTimer = metricFactory.newTimer(CONNECTION_ACQUIRE_LATENCY_NAME);
+        for (OperationType operationType : new OperationType[]{OperationType.READ, OperationType.SCAN,
+                OperationType.MULTI_READ}) {
+            queryTimers.put(operationType, metricFactory.newTimer(QUERY_LATENCY_NAME,
+                    "operation_type", operationType.toString()));
+            decodeTimers.put(operationType, metricFactory.newTimer(DECODE_LATENCY_NAME,
+                    "operation_type", operationType.toString()));
+        }
+        this.streaming = mysqlConfig.fetchMode == MysqlFetchMode.STREAMING;
+        this.pinned = mysqlConfig.connectionMode == MysqlConnectionMode.PINNED;
+        this.batching = mysqlConfig.writeBatchSize > 1;
+        this.batchInsertMetricBean = metricFactory.newMetricBean(OperationType.BATCH_INSERT);
+        this.batchUpdateMetricBean = metricFactory.newMetricBean(OperationType.BATCH_UPDATE);
+        this.transactionMetricBean = metricFactory.newMetricBean(OperationType.TRANSACTION);
+        this.commitTimer = metricFactory.newTimer("perf_storage_transaction_commit_latency");
+        this.rollbackCounter = metricFactory.newCounter("perf_storage_transaction_rollback_count");
+        this.deadlockCounter = metricFactory.newCounter("perf_storage_transaction_deadlock_count");
+        this.lockWaitTimeoutCounter = metricFactory.newCounter("perf_storage_transaction_lock_wait_timeout_count");
+        this.retryCounter = metricFactory.newCounter("perf_storage_transaction_retry_count");
         for (int i = 0; i < mysqlConfig.tableCount; i++) {
+            tableNames[i] = mysqlConfig.tableNamePrefix + i;
             cachedStatements.putIfAbsent(OperationType.INSERT.name() + i,
                     mysqlFlavor.insertStatement(mysqlConfig.tableNamePrefix + i));
             cachedStatements.putIfAbsent(OperationType.UPDATE.name() + i,
@@ -62,85 +227,770 @@ public class MysqlStorageThread extends AbstractStorageThread {
                     mysqlFlavor.readStatement(mysqlConfig.tableNamePrefix + i));
             cachedStatements.putIfAbsent(OperationType.DELETE.name() + i,
                     mysqlFlavor.deleteStatement(mysqlConfig.tableNamePrefix + i));
+            cachedStatements.putIfAbsent(OperationType.SCAN.name() + i,
+                    mysqlFlavor.scanStatement(mysqlConfig.tableNamePrefix + i));
+            cachedStatements.putIfAbsent(LOCKING_READ + i,
+                    mysqlFlavor.lockingReadStatement(mysqlConfig.tableNamePrefix + i));
         }
     }
 
+    /**
+     * inserts the key into every table like the preset, so whichever table a later operation picks holds it.
+     * The inserts into all tables are recorded as one insert.
+     */
     @Override
-    public void insertData(String id) {
-        long start = System.currentTimeMillis();
+    public boolean insertData(String id) {
+        long start = startTime();
+        int size = 0;
+        for (int table = 0; table < mysqlConfig.tableCount; table++) {
+            try (Lease lease = lease(OperationType.INSERT, table)) {
+                PreparedStatement stmt = lease.statement();
+                size += bindInsert(stmt, table, id);
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                insertMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("mysql insert data fail. ", e);
+                unpinIfBroken();
+                return false;
+            }
+        }
+        insertMetricBean.success(System.currentTimeMillis() - start, size);
+        return true;
+    }
+
+    @Override
+    public void insertData(String id, Runnable onStored) {
+        if (batching && isWorkerThread()) {
+            pendingInserts.add(id);
+            pendingPublishes.add(onStored);
+            if (pendingInserts.size() >= mysqlConfig.writeBatchSize) {
+                writeBatch(OperationType.INSERT, 0, mysqlConfig.tableCount, pendingInserts);
+            }
+            return;
+        }
+        super.insertData(id, onStored);
+    }
+
+    @Override
+    public CompletionStage<Void> insertDataAsync(String id, Runnable onStored) {
+        if (batching && isWorkerThread()) {
+            // the batch is flushed by later inserts of this worker, waiting for it in the window could stall
+            insertData(id, onStored);
+            return CompletableFuture.completedFuture(null);
+        }
+        return super.insertDataAsync(id, onStored);
+    }
+
+    /**
+     * inserts the keys one autocommit single row INSERT at a time.
+     *
+     * @return the payload bytes written
+     */
+    public long insertEach(KeySpace keys) {
+        long bytes = 0;
+        for (long i = 0; i < keys.size(); i++) {
+            bytes += Math.max(0, insert(keys.key(i)));
+        }
+        return bytes;
+    }
+
+    /**
+     * inserts the keys with multi-row INSERT statements of MYSQL_PRESET_BATCH_ROWS rows in one transaction,
+     * the latency of every statement is recorded as one insert.
+     *
+     * @return the payload bytes written
+     */
+    public long insertBatch(KeySpace keys) throws SQLException {
+        int batchRows = Math.max(1, mysqlConfig.presetBatchRows);
+        String tableName = mysqlConfig.tableNamePrefix + tableIdx;
+        long bytes = 0;
         try (
-                Connection conn = dataSource.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(cachedStatements
-                        .get(OperationType.INSERT.name() + tableIdx))
+                Connection conn = acquire();
+                PreparedStatement batchStmt = conn.prepareStatement(mysqlFlavor.insertStatement(tableName, batchRows))
         ) {
-            stmt.setString(1, id);
+            conn.setAutoCommit(false);
+            long start = System.currentTimeMillis();
+            try {
+                for (long from = 0; from < keys.size(); from += batchRows) {
+                    int rows = (int) Math.min(batchRows, keys.size() - from);
+                    start = System.currentTimeMillis();
+                    int size;
+                    if (rows == batchRows) {
+                        size = bindRows(batchStmt, keys, from, rows);
+                        batchStmt.executeUpdate();
+                    } else {
+                        try (PreparedStatement stmt = conn.prepareStatement(mysqlFlavor.insertStatement(tableName,
+                                rows))) {
+                            size = bindRows(stmt, keys, from, rows);
+                            stmt.executeUpdate();
+                        }
+                    }
+                    insertMetricBean.success(System.currentTimeMillis() - start, size);
+                    bytes += size;
+                }
+                conn.commit();
+            } catch (SQLException e) {
+                insertMetricBean.fail(System.currentTimeMillis() - start);
+                conn.rollback();
+                throw e;
+            }
+        }
+        return bytes;
+    }
+
+    private int bindRows(PreparedStatement stmt, KeySpace keys, long from, int rows) throws SQLException {
+        int size = 0;
+        int idx = 1;
+        for (int row = 0; row < rows; row++) {
+            String id = keys.key(from + row);
+            stmt.setString(idx++, id);
             for (int i = 2; i <= mysqlConfig.fieldCount; i++) {
-                stmt.setString(i, RandomUtils.getRandomStr(mysqlConfig.fieldValueLength));
+                String value = fieldValue(tableIdx, i, id);
+                stmt.setString(idx++, value);
+                size += value.length();
             }
+        }
+        return size;
+    }
+
+    /**
+     * the value of an inserted field, field1 is the first after the id.
+     */
+    private String fieldValue(int table, int param, String id) {
+        int length = fieldSizeDistribution.next(random());
+        return param == 2 ? insertValue(tableNames[table], id, length) : randomValue(length);
+    }
+
+    /**
+     * loads the keys with one LOAD DATA LOCAL INFILE statement, the tab separated rows are generated one at a
+     * time while the driver reads the stream, so a chunk never sits in memory as a whole. The payload alphabet
+     * has no tab, newline or backslash.
+     *
+     * @return the payload bytes written
+     */
+    public long loadData(KeySpace keys) throws SQLException {
+        RowStream rows = new RowStream(keys);
+        long start = System.currentTimeMillis();
+        try (
+                Connection conn = acquire();
+                Statement stmt = conn.createStatement()
+        ) {
+            stmt.unwrap(org.mariadb.jdbc.Statement.class).setLocalInfileInputStream(rows);
+            stmt.execute(mysqlFlavor.loadDataStatement(mysqlConfig.tableNamePrefix + tableIdx));
+            insertMetricBean.success(System.currentTimeMillis() - start, rows.size);
+        } catch (SQLException e) {
+            insertMetricBean.fail(System.currentTimeMillis() - start);
+            throw e;
+        }
+        return rows.size;
+    }
+
+    /**
+     * @return the payload bytes written, zero when the insert failed
+     */
+    private int insert(String id) {
+        long start = startTime();
+        try (Lease lease = lease(OperationType.INSERT, tableIdx)) {
+            PreparedStatement stmt = lease.statement();
+            int size = bindInsert(stmt, tableIdx, id);
             stmt.executeUpdate();
-            insertMetricBean.success(System.currentTimeMillis() - start);
+            insertMetricBean.success(System.currentTimeMillis() - start, size);
+            return size;
         } catch (SQLException e) {
             insertMetricBean.fail(System.currentTimeMillis() - start);
             log.error("mysql insert data fail. ", e);
+            unpinIfBroken();
+            return -1;
         }
     }
 
     @Override
     public void updateData(String id) {
-        long start = System.currentTimeMillis();
-        try (
-                Connection conn = dataSource.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(cachedStatements
-                        .get(OperationType.UPDATE.name() + RandomUtils.randomElem(mysqlConfig.tableCount)))
-        ) {
-            for (int i = 1; i <= mysqlConfig.updateFieldCount; i++) {
-                stmt.setString(i, RandomUtils.getRandomStr(mysqlConfig.fieldValueLength));
+        if (batching && isWorkerThread()) {
+            if (pendingUpdates.isEmpty()) {
+                pendingUpdateTable = random().nextInt(mysqlConfig.tableCount);
+            }
+            pendingUpdates.add(id);
+            if (pendingUpdates.size() >= mysqlConfig.writeBatchSize) {
+                writeBatch(OperationType.UPDATE, pendingUpdateTable, pendingUpdateTable + 1, pendingUpdates);
+            }
+            return;
+        }
+        long start = startTime();
+        int table = random().nextInt(mysqlConfig.tableCount);
+        try (Lease lease = lease(OperationType.UPDATE, table)) {
+            PreparedStatement stmt = lease.statement();
+            String verifiedValue = updateValue(tableNames[table], id, fieldSizeDistribution.next(random()));
+            stmt.setString(1, verifiedValue);
+            int size = verifiedValue.length();
+            for (int i = 2; i <= mysqlConfig.updateFieldCount; i++) {
+                int length = fieldSizeDistribution.next(random());
+                stmt.setString(i, randomValue(length));
+                size += length;
             }
             stmt.setString(mysqlConfig.updateFieldCount + 1, id);
             stmt.executeUpdate();
-            updateMetricBean.success(System.currentTimeMillis() - start);
+            updated(tableNames[table], id, verifiedValue);
+            updateMetricBean.success(System.currentTimeMillis() - start, size);
         } catch (SQLException e) {
             updateMetricBean.fail(System.currentTimeMillis() - start);
             log.error("mysql update data fail. ", e);
+            unpinIfBroken();
         }
     }
 
     @Override
     public void readData(String id) {
-        long start = System.currentTimeMillis();
-        try (
-                Connection conn = dataSource.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(cachedStatements
-                        .get(OperationType.READ.name() + RandomUtils.randomElem(mysqlConfig.tableCount)))
-        ) {
+        long start = startTime();
+        int table = random().nextInt(mysqlConfig.tableCount);
+        try (Lease lease = lease(OperationType.READ, table)) {
+            PreparedStatement stmt = lease.statement();
             stmt.setString(1, id);
-            stmt.execute();
-            readMetricBean.success(System.currentTimeMillis() - start);
+            int expectedVersion = expectedVersion(tableNames[table], id);
+            Map<String, String> verifiedValues = verifying() ? new HashMap<>() : null;
+            Rows rows = query(OperationType.READ, stmt, verifiedValues);
+            readMetricBean.success(System.currentTimeMillis() - start, rows.size());
+            if (verifying()) {
+                verify(tableNames[table], id, expectedVersion, verifiedValues.get(id));
+            }
         } catch (SQLException e) {
             readMetricBean.fail(System.currentTimeMillis() - start);
             log.error("mysql read data fail. ", e);
+            unpinIfBroken();
         }
     }
 
+    /**
+     * deletes the key from every table it was inserted into, the deletes are recorded as one delete.
+     */
     @Override
     public void deleteData(String id) {
-        long start = System.currentTimeMillis();
-        try (
-                Connection conn = dataSource.getConnection();
-                PreparedStatement stmt = conn.prepareStatement(cachedStatements
-                        .get(OperationType.DELETE.name() + RandomUtils.randomElem(mysqlConfig.tableCount)))
-        ) {
-            if (initIds.size() == 0) {
-                log.info("size is zero");
+        if (keySpace.size() == 0) {
+            log.info("size is zero");
+            return;
+        }
+        long start = startTime();
+        for (int table = 0; table < mysqlConfig.tableCount; table++) {
+            try (Lease lease = lease(OperationType.DELETE, table)) {
+                PreparedStatement stmt = lease.statement();
+                stmt.setString(1, id);
+                stmt.executeUpdate();
+            } catch (SQLException e) {
+                deleteMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("delete data fail. ", e);
+                unpinIfBroken();
                 return;
             }
+        }
+        deleteMetricBean.success(System.currentTimeMillis() - start);
+    }
+
+    /**
+     * reads a primary key range of a random table, every column of every row is read from the result.
+     */
+    @Override
+    public void scanData(String id, int length) {
+        long start = startTime();
+        try (Lease lease = lease(OperationType.SCAN, random().nextInt(mysqlConfig.tableCount))) {
+            PreparedStatement stmt = lease.statement();
             stmt.setString(1, id);
-            stmt.executeUpdate();
-            deleteMetricBean.success(System.currentTimeMillis() - start);
+            stmt.setInt(2, length);
+            Rows rows = query(OperationType.SCAN, stmt, null);
+            scanMetricBean.success(System.currentTimeMillis() - start, rows.size());
+            scanMetricBean.items(rows.count());
+        } catch (SQLException e) {
+            scanMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("mysql scan data fail. ", e);
+            unpinIfBroken();
+        }
+    }
+
+    /**
+     * reads the keys from a random table with one IN query, its statement is prepared once per number of keys.
+     */
+    @Override
+    public void multiReadData(List<String> ids) {
+        long start = startTime();
+        int table = random().nextInt(mysqlConfig.tableCount);
+        String key = OperationType.MULTI_READ.name() + table + "x" + ids.size();
+        cachedStatements.computeIfAbsent(key, k -> mysqlFlavor.multiReadStatement(tableNames[table], ids.size()));
+        try (Lease lease = lease(key)) {
+            PreparedStatement stmt = lease.statement();
+            int[] expectedVersions = new int[ids.size()];
+            for (int i = 0; i < ids.size(); i++) {
+                stmt.setString(i + 1, ids.get(i));
+                if (verifying()) {
+                    expectedVersions[i] = expectedVersion(tableNames[table], ids.get(i));
+                }
+            }
+            Map<String, String> verifiedValues = verifying() ? new HashMap<>() : null;
+            Rows rows = query(OperationType.MULTI_READ, stmt, verifiedValues);
+            multiReadMetricBean.success(System.currentTimeMillis() - start, rows.size());
+            multiReadMetricBean.items(ids.size());
+            if (verifying()) {
+                for (int i = 0; i < ids.size(); i++) {
+                    verify(tableNames[table], ids.get(i), expectedVersions[i], verifiedValues.get(ids.get(i)));
+                }
+            }
+        } catch (SQLException e) {
+            multiReadMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("mysql multi read data fail. ", e);
+            unpinIfBroken();
+        }
+    }
+
+    /**
+     * runs the query and reads every column of every row of its result.
+     *
+     * @param verifiedValues collects the verified field of the rows by id, may be null
+     */
+    private Rows query(OperationType operationType, PreparedStatement stmt, Map<String, String> verifiedValues)
+            throws SQLException {
+        long start = System.nanoTime();
+        try (ResultSet ret = stmt.executeQuery()) {
+            long returned = System.nanoTime();
+            queryTimers.get(operationType).record(returned - start, TimeUnit.NANOSECONDS);
+            int columns = ret.getMetaData().getColumnCount();
+            long count = 0;
+            long size = 0;
+            while (ret.next()) {
+                count++;
+                for (int i = 1; i <= columns; i++) {
+                    String value = ret.getString(i);
+                    size += value == null ? 0 : value.length();
+                }
+                if (verifiedValues != null) {
+                    verifiedValues.put(ret.getString("id"), ret.getString(VERIFIED_FIELD));
+                }
+            }
+            decodeTimers.get(operationType).record(System.nanoTime() - returned, TimeUnit.NANOSECONDS);
+            return new Rows(count, size);
+        }
+    }
+
+    private PreparedStatement prepare(Connection conn, String key) throws SQLException {
+        PreparedStatement stmt = conn.prepareStatement(cachedStatements.get(key));
+        if (streaming) {
+            stmt.setFetchSize(mysqlConfig.fetchSize);
+        }
+        return stmt;
+    }
+
+    private Connection acquire() throws SQLException {
+        long start = System.nanoTime();
+        Connection conn = dataSource.getConnection();
+        connectionAcquireTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        return conn;
+    }
+
+    /**
+     * the statement of the operation on the table, on the pinned connection when the worker loop asks for it
+     * in pinned mode, else on a connection borrowed for the operation.
+     */
+    private Lease lease(OperationType operationType, int table) throws SQLException {
+        return lease(operationType.name() + table);
+    }
+
+    /**
+     * @param key the key of the statement in the cached statements
+     */
+    private Lease lease(String key) throws SQLException {
+        if (pinned && isWorkerThread()) {
+            if (pinnedConnection == null) {
+                pinnedConnection = acquire();
+            }
+            PreparedStatement stmt = pinnedStatements.get(key);
+            if (stmt == null) {
+                stmt = prepare(pinnedConnection, key);
+                pinnedStatements.put(key, stmt);
+            }
+            return new Lease(null, stmt);
+        }
+        Connection conn = acquire();
+        try {
+            return new Lease(conn, prepare(conn, key));
+        } catch (SQLException e) {
+            conn.close();
+            throw e;
+        }
+    }
+
+    /**
+     * drops the pinned connection after a failure when it is no longer usable, the next operation pins a
+     * fresh one.
+     */
+    private void unpinIfBroken() {
+        if (pinnedConnection == null || !isWorkerThread()) {
+            return;
+        }
+        try {
+            if (pinnedConnection.isValid(1)) {
+                return;
+            }
+        } catch (SQLException e) {
+            log.debug("check pinned connection fail. ", e);
+        }
+        log.warn("pinned mysql connection broken, pin a new one");
+        pinnedStatements.clear();
+        try {
+            pinnedConnection.close();
+        } catch (SQLException e) {
+            log.debug("close pinned connection fail. ", e);
+        }
+        pinnedConnection = null;
+    }
+
+    /**
+     * writes the buffered rows with one executeBatch per table from {@code fromTable} to {@code toTable}
+     * exclusive, the buffer is emptied even when it fails.
+     */
+    private void writeBatch(OperationType operationType, int fromTable, int toTable, List<String> ids) {
+        boolean insert = operationType == OperationType.INSERT;
+        MetricBean batchMetricBean = insert ? batchInsertMetricBean : batchUpdateMetricBean;
+        MetricBean rowMetricBean = insert ? insertMetricBean : updateMetricBean;
+        long start = System.currentTimeMillis();
+        try {
+            int size = 0;
+            for (int table = fromTable; table < toTable; table++) {
+                PreparedStatement stmt = batchStatement(operationType, table);
+                for (String id : ids) {
+                    size += insert ? bindInsert(stmt, table, id) : bindUpdate(stmt, table, id, uncommittedUpdates);
+                    stmt.addBatch();
+                }
+                stmt.executeBatch();
+            }
+            if (insert) {
+                uncommittedPublishes.addAll(pendingPublishes);
+            }
+            transactionRows += ids.size();
+            if (mysqlConfig.writeTransactionSize <= 0) {
+                applyCommitted();
+            } else if (transactionRows >= mysqlConfig.writeTransactionSize) {
+                batchConnection.commit();
+                applyCommitted();
+            }
+            long cost = System.currentTimeMillis() - start;
+            batchMetricBean.success(cost, size);
+            for (int i = 0; i < ids.size(); i++) {
+                rowMetricBean.success(cost / ids.size(), size / ids.size());
+            }
+        } catch (SQLException e) {
+            long cost = System.currentTimeMillis() - start;
+            batchMetricBean.fail(cost);
+            for (int i = 0; i < ids.size(); i++) {
+                rowMetricBean.fail(cost / ids.size());
+            }
+            log.error("mysql batch {} fail. ", operationType, e);
+            abortBatchTransaction();
+        } finally {
+            if (insert) {
+                pendingPublishes.clear();
+            }
+            ids.clear();
+        }
+    }
+
+    private int bindInsert(PreparedStatement stmt, int table, String id) throws SQLException {
+        stmt.setString(1, id);
+        int size = 0;
+        for (int i = 2; i <= mysqlConfig.fieldCount; i++) {
+            String value = fieldValue(table, i, id);
+            stmt.setString(i, value);
+            size += value.length();
+        }
+        return size;
+    }
+
+    /**
+     * binds one update of a transaction, its verifiable value is applied when the transaction commits.
+     *
+     * @param updates the verifiable values of the transaction
+     */
+    private int bindUpdate(PreparedStatement stmt, int table, String id, List<String[]> updates)
+            throws SQLException {
+        String verifiedValue = updateValue(tableNames[table], id, fieldSizeDistribution.next(random()));
+        stmt.setString(1, verifiedValue);
+        int size = verifiedValue.length();
+        for (int i = 2; i <= mysqlConfig.updateFieldCount; i++) {
+            int length = fieldSizeDistribution.next(random());
+            stmt.setString(i, randomValue(length));
+            size += length;
+        }
+        stmt.setString(mysqlConfig.updateFieldCount + 1, id);
+        if (verifying()) {
+            updates.add(new String[]{tableNames[table], id, verifiedValue});
+        }
+        return size;
+    }
+
+    private PreparedStatement batchStatement(OperationType operationType, int table) throws SQLException {
+        if (batchConnection == null) {
+            batchConnection = acquire();
+            batchConnection.setAutoCommit(mysqlConfig.writeTransactionSize <= 0);
+        }
+        String key = operationType.name() + table;
+        PreparedStatement stmt = batchStatements.get(key);
+        if (stmt == null) {
+            stmt = batchConnection.prepareStatement(cachedStatements.get(key));
+            batchStatements.put(key, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * applies the verifiable values and publishes the inserts of the writes just committed.
+     */
+    private void applyCommitted() {
+        for (String[] update : uncommittedUpdates) {
+            updated(update[0], update[1], update[2]);
+        }
+        uncommittedUpdates.clear();
+        uncommittedPublishes.forEach(Runnable::run);
+        uncommittedPublishes.clear();
+        transactionRows = 0;
+    }
+
+    /**
+     * rolls the open transaction back and drops the batch connection, the next batch starts on a fresh one.
+     */
+    private void abortBatchTransaction() {
+        uncommittedUpdates.clear();
+        uncommittedPublishes.clear();
+        transactionRows = 0;
+        batchStatements.clear();
+        if (batchConnection == null) {
+            return;
+        }
+        try {
+            if (!batchConnection.getAutoCommit()) {
+                batchConnection.rollback();
+            }
+        } catch (SQLException e) {
+            log.debug("rollback mysql batch fail. ", e);
+        }
+        try {
+            batchConnection.close();
         } catch (SQLException e) {
-            deleteMetricBean.fail(System.currentTimeMillis() - start);
-            log.error("delete data fail. ", e);
+            log.debug("close mysql batch connection fail. ", e);
+        }
+        batchConnection = null;
+    }
+
+    @Override
+    protected void doBackendOperation() {
+        if (mysqlConfig.transactionRatePercent > random().nextDouble()) {
+            transaction();
+        }
+    }
+
+    private void transaction() {
+        List<String> ids = transactionKeys();
+        if (ids.isEmpty()) {
+            log.debug("no live key to lock");
+            return;
         }
+        int table = random().nextInt(mysqlConfig.tableCount);
+        long start = startTime();
+        for (int attempt = 0; ; attempt++) {
+            try {
+                int size = runTransaction(table, ids);
+                transactionMetricBean.success(System.currentTimeMillis() - start, size);
+                return;
+            } catch (SQLException e) {
+                rollbackTransaction();
+                boolean deadlock = e.getErrorCode() == ER_LOCK_DEADLOCK;
+                boolean lockWaitTimeout = e.getErrorCode() == ER_LOCK_WAIT_TIMEOUT;
+                if (deadlock) {
+                    deadlockCounter.increment();
+                } else if (lockWaitTimeout) {
+                    lockWaitTimeoutCounter.increment();
+                }
+                if ((deadlock || lockWaitTimeout) && attempt < mysqlConfig.transactionMaxRetries) {
+                    retryCounter.increment();
+                    log.debug("retry mysql transaction after {}", e.getMessage());
+                    continue;
+                }
+                transactionMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("mysql transaction fail. ", e);
+                return;
+            }
+        }
+    }
+
+    /**
+     * @return distinct keys, a row is locked and updated once per transaction
+     */
+    private List<String> transactionKeys() {
+        int hotRows = (int) Math.min(mysqlConfig.transactionHotRows, keySpace.size());
+        List<String> ids = new ArrayList<>(mysqlConfig.transactionRows);
+        for (int i = 0; i < mysqlConfig.transactionRows; i++) {
+            String id = hotRows > 0 && mysqlConfig.transactionHotRatePercent > random().nextDouble()
+                    ? keySpace.key(random().nextInt(hotRows)) : nextKey();
+            if (id != null && !ids.contains(id)) {
+                ids.add(id);
+            }
+        }
+        return ids;
+    }
+
+    /**
+     * @return the payload bytes written
+     */
+    private int runTransaction(int table, List<String> ids) throws SQLException {
+        PreparedStatement lockStmt = transactionStatement(LOCKING_READ + table);
+        PreparedStatement updateStmt = transactionStatement(OperationType.UPDATE.name() + table);
+        int size = 0;
+        for (String id : ids) {
+            int expectedVersion = expectedVersion(tableNames[table], id);
+            lockStmt.setString(1, id);
+            try (ResultSet ret = lockStmt.executeQuery()) {
+                verify(tableNames[table], id, expectedVersion, ret.next() ? ret.getString(VERIFIED_FIELD) : null);
+            }
+            size += bindUpdate(updateStmt, table, id, transactionUpdates);
+            updateStmt.executeUpdate();
+        }
+        long commitStart = System.nanoTime();
+        transactionConnection.commit();
+        commitTimer.record(System.nanoTime() - commitStart, TimeUnit.NANOSECONDS);
+        for (String[] update : transactionUpdates) {
+            updated(update[0], update[1], update[2]);
+        }
+        transactionUpdates.clear();
+        return size;
+    }
+
+    private PreparedStatement transactionStatement(String key) throws SQLException {
+        if (transactionConnection == null) {
+            transactionConnection = acquire();
+            transactionConnection.setAutoCommit(false);
+            transactionConnection.setTransactionIsolation(mysqlConfig.transactionIsolation.level);
+        }
+        PreparedStatement stmt = transactionStatements.get(key);
+        if (stmt == null) {
+            stmt = transactionConnection.prepareStatement(cachedStatements.get(key));
+            transactionStatements.put(key, stmt);
+        }
+        return stmt;
+    }
+
+    /**
+     * rolls the running transaction back, the connection is dropped when it cannot, the next transaction then
+     * starts on a fresh one.
+     */
+    private void rollbackTransaction() {
+        transactionUpdates.clear();
+        if (transactionConnection == null) {
+            return;
+        }
+        try {
+            transactionConnection.rollback();
+            rollbackCounter.increment();
+            return;
+        } catch (SQLException e) {
+            log.warn("rollback mysql transaction fail, drop its connection. ", e);
+        }
+        transactionStatements.clear();
+        try {
+            transactionConnection.close();
+        } catch (SQLException e) {
+            log.debug("close mysql transaction connection fail. ", e);
+        }
+        transactionConnection = null;
+    }
+
+    /**
+     * the keys as LOAD DATA rows, a row is generated when the previous one is read up.
+     */
+    private class RowStream extends InputStream {
+
+        private final KeySpace keys;
+
+        private final StringBuilder row = new StringBuilder();
+
+        private long next;
+
+        private byte[] buffer = new byte[0];
+
+        private int position;
+
+        /**
+         * payload bytes of the rows generated so far.
+         */
+        private long size;
+
+        RowStream(KeySpace keys) {
+            this.keys = keys;
+        }
+
+        @Override
+        public int read() {
+            if (!fill()) {
+                return -1;
+            }
+            return buffer[position++] & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            int read = 0;
+            while (read < len && fill()) {
+                int n = Math.min(len - read, buffer.length - position);
+                System.arraycopy(buffer, position, b, off + read, n);
+                position += n;
+                read += n;
+            }
+            return read == 0 ? -1 : read;
+        }
+
+        private boolean fill() {
+            if (position < buffer.length) {
+                return true;
+            }
+            if (next >= keys.size()) {
+                return false;
+            }
+            String id = keys.key(next++);
+            row.setLength(0);
+            row.append(id);
+            for (int field = 2; field <= mysqlConfig.fieldCount; field++) {
+                String value = fieldValue(tableIdx, field, id);
+                row.append('\t').append(value);
+                size += value.length();
+            }
+            row.append('\n');
+            buffer = row.toString().getBytes(StandardCharsets.ISO_8859_1);
+            position = 0;
+            return true;
+        }
+
+    }
+
+    /**
+     * @param count the rows read
+     * @param size  the length of all their columns
+     */
+    private record Rows(long count, long size) {
+    }
+
+    /**
+     * a statement with the connection it was borrowed with, null for a pinned statement which stays open.
+     */
+    private record Lease(Connection connection, PreparedStatement statement) implements AutoCloseable {
+
+        @Override
+        public void close() throws SQLException {
+            if (connection != null) {
+                try {
+                    statement.close();
+                } finally {
+                    connection.close();
+                }
+            }
+        }
+
     }
 
 }
@@ -0,0 +1,154 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.mysql.service;
+
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.module.OperationType;
+import com.github.perftool.storage.mysql.config.MysqlConfig;
+import com.zaxxer.hikari.HikariConfigMXBean;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.CountAtBucket;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the workload at every pool size of MYSQL_POOL_SWEEP_SIZES, smallest first, as the pool closes surplus
+ * connections lazily. A size counts the connections the workers share, the connections workers hold for the
+ * whole run are added on top of every size. Every size gets MYSQL_POOL_SWEEP_WARMUP_SECONDS to settle and is
+ * then measured for MYSQL_POOL_SWEEP_STEP_SECONDS. The throughput and p99 of a step are taken from the
+ * difference of the success latency timers between its start and end, leaving out the BATCH_INSERT and
+ * BATCH_UPDATE timers as their rows are recorded as inserts and updates too. The p99 is the upper bound of its
+ * histogram bucket. The prometheus timers count their buckets cumulatively, so the difference covers the step
+ * only. The pool goes back to its configured size once the sweep is done.
+ */
+@Slf4j
+public class PoolSizeSweep {
+
+    private static final double PERCENTILE = 0.99;
+
+    private final MysqlConfig mysqlConfig;
+
+    private final HikariDataSource dataSource;
+
+    private final MetricFactory metricFactory;
+
+    private final int heldConnections;
+
+    /**
+     * @param heldConnections connections the workers hold for the whole run, pinned, batch or transaction ones
+     */
+    public PoolSizeSweep(MysqlConfig mysqlConfig, HikariDataSource dataSource, MetricFactory metricFactory,
+                         int heldConnections) {
+        this.mysqlConfig = mysqlConfig;
+        this.dataSource = dataSource;
+        this.metricFactory = metricFactory;
+        this.heldConnections = heldConnections;
+    }
+
+    public void run() {
+        List<Integer> sizes = new ArrayList<>();
+        for (String size : mysqlConfig.poolSweepSizes.split(",")) {
+            sizes.add(Integer.parseInt(size.trim()));
+        }
+        sizes.sort(Comparator.naturalOrder());
+        HikariConfigMXBean pool = dataSource.getHikariConfigMXBean();
+        int configuredSize = pool.getMaximumPoolSize();
+        List<String> report = new ArrayList<>();
+        try {
+            for (int size : sizes) {
+                resize(pool, heldConnections + size);
+                log.info("pool size sweep: {} connections and {} held ones, warm up for {}s", size,
+                        heldConnections, mysqlConfig.poolSweepWarmupSeconds);
+                TimeUnit.SECONDS.sleep(mysqlConfig.poolSweepWarmupSeconds);
+                Window from = window();
+                TimeUnit.SECONDS.sleep(mysqlConfig.poolSweepStepSeconds);
+                Window to = window();
+                String result = String.format("pool size %d: %.1f ops/s, p99 %s ms, %d threads awaiting",
+                        size, (double) (to.count() - from.count()) / mysqlConfig.poolSweepStepSeconds,
+                        percentile(from, to), dataSource.getHikariPoolMXBean().getThreadsAwaitingConnection());
+                log.info("pool size sweep: {}", result);
+                report.add(result);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            log.warn("pool size sweep interrupted");
+        }
+        resize(pool, configuredSize);
+        log.info("pool size sweep done, back to {} connections\n{}", configuredSize, String.join("\n", report));
+    }
+
+    private static void resize(HikariConfigMXBean pool, int size) {
+        pool.setMaximumPoolSize(size);
+        pool.setMinimumIdle(size);
+    }
+
+    /**
+     * the success count and latency histogram of every operation so far.
+     */
+    Window window() {
+        long count = 0;
+        TreeMap<Double, Double> buckets = new TreeMap<>();
+        for (Timer timer : metricFactory.successTimers()) {
+            if (isBatch(timer)) {
+                continue;
+            }
+            count += timer.count();
+            for (CountAtBucket bucket : timer.takeSnapshot().histogramCounts()) {
+                buckets.merge(bucket.bucket(TimeUnit.MILLISECONDS), bucket.count(), Double::sum);
+            }
+        }
+        return new Window(count, buckets);
+    }
+
+    private static boolean isBatch(Timer timer) {
+        String operationType = timer.getId().getTag("operation_type");
+        return OperationType.BATCH_INSERT.toString().equals(operationType)
+                || OperationType.BATCH_UPDATE.toString().equals(operationType);
+    }
+
+    /**
+     * @return the upper bound of the bucket holding the percentile of the step, "-" when nothing succeeded
+     */
+    static String percentile(Window from, Window to) {
+        long count = to.count() - from.count();
+        if (count == 0) {
+            return "-";
+        }
+        double rank = Math.ceil(count * PERCENTILE);
+        for (Map.Entry<Double, Double> bucket : to.buckets().entrySet()) {
+            double stepCount = bucket.getValue() - from.buckets().getOrDefault(bucket.getKey(), 0.0);
+            if (stepCount >= rank) {
+                return String.format("%.1f", bucket.getKey());
+            }
+        }
+        return to.buckets().isEmpty() ? "-" : "> " + String.format("%.1f", to.buckets().lastKey());
+    }
+
+    record Window(long count, TreeMap<Double, Double> buckets) {
+    }
+
+}
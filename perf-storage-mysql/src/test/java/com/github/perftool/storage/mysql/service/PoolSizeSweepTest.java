@@ -0,0 +1,121 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.mysql.service;
+
+import com.github.perftool.storage.common.config.StorageType;
+import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.module.OperationType;
+import com.github.perftool.storage.mysql.config.MysqlConfig;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+class PoolSizeSweepTest {
+
+    private SimpleMeterRegistry registry;
+
+    private PoolSizeSweep sweep;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        sweep = new PoolSizeSweep(new MysqlConfig(), null, new MetricFactory(registry, StorageType.MYSQL), 0);
+    }
+
+    @Test
+    void stepCountsOnlyItsOwnOperations() {
+        Timer insert = timer(OperationType.INSERT);
+        Timer read = timer(OperationType.READ);
+        record(insert, 1000, 100);
+        PoolSizeSweep.Window from = sweep.window();
+        record(insert, 98, 1);
+        record(read, 1, 1);
+        record(read, 1, 50);
+        PoolSizeSweep.Window to = sweep.window();
+        Assertions.assertEquals(100, to.count() - from.count());
+        Assertions.assertEquals(bound(1), PoolSizeSweep.percentile(from, to));
+    }
+
+    @Test
+    void percentileIsTheUpperBoundOfItsBucket() {
+        Timer insert = timer(OperationType.INSERT);
+        PoolSizeSweep.Window from = sweep.window();
+        record(insert, 97, 1);
+        record(insert, 3, 40);
+        Assertions.assertEquals(bound(50), PoolSizeSweep.percentile(from, sweep.window()));
+    }
+
+    @Test
+    void batchTimersAreLeftOut() {
+        Timer insert = timer(OperationType.INSERT);
+        Timer batchInsert = timer(OperationType.BATCH_INSERT);
+        Timer batchUpdate = timer(OperationType.BATCH_UPDATE);
+        PoolSizeSweep.Window from = sweep.window();
+        record(insert, 100, 1);
+        record(batchInsert, 10, 100);
+        record(batchUpdate, 10, 100);
+        PoolSizeSweep.Window to = sweep.window();
+        Assertions.assertEquals(100, to.count() - from.count());
+        Assertions.assertEquals(bound(1), PoolSizeSweep.percentile(from, to));
+    }
+
+    @Test
+    void stepWithoutOperationsHasNoPercentile() {
+        record(timer(OperationType.INSERT), 10, 5);
+        PoolSizeSweep.Window from = sweep.window();
+        Assertions.assertEquals("-", PoolSizeSweep.percentile(from, sweep.window()));
+    }
+
+    @Test
+    void latencyAboveEveryBucketIsReportedAsOpen() {
+        Timer insert = timer(OperationType.INSERT);
+        PoolSizeSweep.Window from = sweep.window();
+        record(insert, 100, 1000);
+        Assertions.assertEquals("> " + bound(100), PoolSizeSweep.percentile(from, sweep.window()));
+    }
+
+    /**
+     * a success timer as the metric beans register it, with fixed buckets so the percentiles are exact.
+     */
+    private Timer timer(OperationType operationType) {
+        return Timer.builder("perf_storage_success_latency_timer")
+                .serviceLevelObjectives(Duration.ofMillis(1), Duration.ofMillis(5), Duration.ofMillis(10),
+                        Duration.ofMillis(50), Duration.ofMillis(100))
+                .tag("storage_type", StorageType.MYSQL.toString())
+                .tag("operation_type", operationType.toString())
+                .register(registry);
+    }
+
+    private static void record(Timer timer, int times, long millis) {
+        for (int i = 0; i < times; i++) {
+            timer.record(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private static String bound(double millis) {
+        return String.format("%.1f", millis);
+    }
+
+}
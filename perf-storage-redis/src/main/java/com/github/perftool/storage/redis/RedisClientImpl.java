@@ -22,10 +22,14 @@ package com.github.perftool.storage.redis;
 import com.github.perftool.storage.redis.config.RedisConfig;
 import com.github.perftool.storage.redis.functional.SyncCommandCallback;
 import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.KeyValue;
 import io.lettuce.core.RedisClient;
+import io.lettuce.core.RedisFuture;
 import io.lettuce.core.RedisURI;
 import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
 import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import io.lettuce.core.api.sync.RedisCommands;
 import io.lettuce.core.support.ConnectionPoolSupport;
 import lombok.extern.slf4j.Slf4j;
@@ -34,24 +38,36 @@ import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 
 
 import java.time.Duration;
+import java.util.List;
 
 @Slf4j
 public class RedisClientImpl {
 
     private RedisConfig redisConfig;
 
+    /**
+     * one client for every connection, a client owns its own event loops and threads.
+     */
+    private final RedisClient redisClient;
+
     private GenericObjectPool<StatefulRedisConnection<String, String>> redisConnectionPool;
 
+    /**
+     * shared connection for pipelined commands, lettuce multiplexes concurrent async commands on it.
+     */
+    private volatile StatefulRedisConnection<String, String> asyncConnection;
+
     public RedisClientImpl(RedisConfig redisConfig) {
         this.redisConfig = redisConfig;
+        this.redisClient = createRedisClient();
         GenericObjectPoolConfig<StatefulRedisConnection<String, String>> poolConfig = new GenericObjectPoolConfig<>();
         poolConfig.setMaxTotal(redisConfig.maxActive);
         poolConfig.setMaxIdle(redisConfig.maxIdle);
         poolConfig.setMinIdle(redisConfig.minIdle);
-        redisConnectionPool = ConnectionPoolSupport.createGenericObjectPool(() -> redisClient().connect(), poolConfig);
+        redisConnectionPool = ConnectionPoolSupport.createGenericObjectPool(redisClient::connect, poolConfig);
     }
 
-    private RedisClient redisClient() {
+    private RedisClient createRedisClient() {
         String[] url = redisConfig.clusterNodeUrl.split(":");
         RedisURI redisUrl = RedisURI.Builder
                 .redis(url[0], Integer.parseInt(url[1]))
@@ -73,6 +89,30 @@ public class RedisClientImpl {
         }
     }
 
+    private RedisAsyncCommands<String, String> asyncCommands() {
+        StatefulRedisConnection<String, String> connection = asyncConnection;
+        if (connection == null) {
+            synchronized (this) {
+                connection = asyncConnection;
+                if (connection == null) {
+                    connection = redisClient.connect();
+                    asyncConnection = connection;
+                }
+            }
+        }
+        return connection.async();
+    }
+
+    /**
+     * a dedicated connection with manual flushing for pipelined bulk writes, it must only be used by one thread
+     * at a time.
+     */
+    public StatefulRedisConnection<String, String> pipelinedConnection() {
+        StatefulRedisConnection<String, String> connection = redisClient.connect();
+        connection.setAutoFlushCommands(false);
+        return connection;
+    }
+
     public String set(String key, String value) {
         return executeSync(commands -> commands.set(key, value));
     }
@@ -81,11 +121,51 @@ public class RedisClientImpl {
         return executeSync(commands -> commands.get(key));
     }
 
+    public List<KeyValue<String, String>> mget(String... keys) {
+        return executeSync(commands -> commands.mget(keys));
+    }
+
     public Long del(String... key) {
         return executeSync(commands -> commands.del(key));
     }
 
+    public Long exists(String... keys) {
+        return executeSync(commands -> commands.exists(keys));
+    }
+
     public KeyScanCursor<String> scan(ScanArgs scanArgs) {
         return executeSync(commands -> commands.scan(scanArgs));
     }
+
+    public KeyScanCursor<String> scan(ScanCursor scanCursor, ScanArgs scanArgs) {
+        return executeSync(commands -> commands.scan(scanCursor, scanArgs));
+    }
+
+    public RedisFuture<String> setAsync(String key, String value) {
+        return asyncCommands().set(key, value);
+    }
+
+    public RedisFuture<String> getAsync(String key) {
+        return asyncCommands().get(key);
+    }
+
+    public RedisFuture<List<KeyValue<String, String>>> mgetAsync(String... keys) {
+        return asyncCommands().mget(keys);
+    }
+
+    public RedisFuture<Long> delAsync(String... key) {
+        return asyncCommands().del(key);
+    }
+
+    /**
+     * closes the pooled and shared connections and shuts the client down within LETTUCE_SHUTDOWN_TIMEOUT_SECONDS.
+     */
+    public void close() {
+        redisConnectionPool.close();
+        StatefulRedisConnection<String, String> connection = asyncConnection;
+        if (connection != null) {
+            connection.close();
+        }
+        redisClient.shutdown(Duration.ZERO, Duration.ofSeconds(redisConfig.shutDownTimeout));
+    }
 }
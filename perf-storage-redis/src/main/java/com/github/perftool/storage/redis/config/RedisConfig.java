@@ -61,4 +61,22 @@ public class RedisConfig extends CommonConfig {
     @Value("${DATA_SIZE:1024}")
     public int dataSize;
 
+    @Value("${DATA_SIZE_DISTRIBUTION:}")
+    public String dataSizeDistribution;
+
+    @Value("${REDIS_PRESET_MODE:SINGLE}")
+    public RedisPresetMode presetMode;
+
+    @Value("${REDIS_PRESET_CONNECTIONS:4}")
+    public int presetConnections;
+
+    @Value("${REDIS_PRESET_PIPELINE_DEPTH:1000}")
+    public int presetPipelineDepth;
+
+    @Value("${REDIS_PRESET_MSET_KEYS:100}")
+    public int presetMsetKeys;
+
+    @Value("${REDIS_PRESET_CHUNK_ROWS:10000}")
+    public int presetChunkRows;
+
 }
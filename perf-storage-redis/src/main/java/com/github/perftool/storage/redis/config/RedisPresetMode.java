@@ -0,0 +1,38 @@
+/**
+ * Licensed to the Apache Software Foundation (ASF) under one
+ * or more contributor license agreements.  See the NOTICE file
+ * distributed with this work for additional information
+ * regarding copyright ownership.  The ASF licenses this file
+ * to you under the Apache License, Version 2.0 (the
+ * "License"); you may not use this file except in compliance
+ * with the License.  You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing,
+ * software distributed under the License is distributed on an
+ * "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY
+ * KIND, either express or implied.  See the License for the
+ * specific language governing permissions and limitations
+ * under the License.
+ */
+
+package com.github.perftool.storage.redis.config;
+
+public enum RedisPresetMode {
+
+    /**
+     * one synchronous SET per key on a pooled connection.
+     */
+    SINGLE,
+    /**
+     * SET commands pipelined on dedicated connections, flushed every REDIS_PRESET_PIPELINE_DEPTH commands.
+     */
+    PIPELINE,
+    /**
+     * MSET commands of REDIS_PRESET_MSET_KEYS keys, pipelined like PIPELINE. Single node only, with
+     * REDIS_CLUSTER_ENABLE the preset falls back to PIPELINE.
+     */
+    MSET
+
+}
@@ -19,29 +19,39 @@
 
 package com.github.perftool.storage.redis.service;
 
+import com.github.perftool.storage.common.engine.WorkerEngine;
+import com.github.perftool.storage.common.keyspace.KeyDiscovery;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.StoredKeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import com.github.perftool.storage.common.preset.PresetCheckpoint;
+import com.github.perftool.storage.common.preset.PresetRunner;
+import com.github.perftool.storage.common.service.VerifyService;
 import com.github.perftool.storage.redis.RedisClientImpl;
 import com.github.perftool.storage.redis.config.RedisConfig;
+import com.github.perftool.storage.redis.config.RedisPresetMode;
 import io.lettuce.core.KeyScanCursor;
 import io.lettuce.core.ScanArgs;
+import io.lettuce.core.api.StatefulRedisConnection;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.beans.factory.DisposableBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
 
 @Slf4j
 @Service
-public class RedisService {
+public class RedisService implements DisposableBean {
     private RedisConfig redisConfig;
 
     private RedisClientImpl redisClientImpl;
 
+    @Autowired
+    private VerifyService verifyService;
+
     public RedisService(@Autowired RedisConfig redisConfig) {
         this.redisConfig = redisConfig;
     }
@@ -50,30 +60,94 @@ public class RedisService {
         this.redisClientImpl = new RedisClientImpl(redisConfig);
     }
 
-    public Set<String> listKeys() {
-        KeyScanCursor scan = redisClientImpl.scan(ScanArgs.Builder
-                .limit(redisConfig.dataSetSize)
-                .match("*"));
-        return new HashSet<>(scan.getKeys());
+    /**
+     * identifies the database the keys are stored in, for the key manifest fingerprint.
+     */
+    public String datasetIdentity() {
+        return redisConfig.clusterNodeUrl + "/" + redisConfig.database;
+    }
+
+    /**
+     * follows the SCAN cursor until the server reports it finished, the cursor of a single node cannot be
+     * split so the scan runs on one thread.
+     */
+    public StoredKeySpace listKeys() {
+        return KeyDiscovery.discover("redis", 1, List.of(sink -> {
+            ScanArgs scanArgs = ScanArgs.Builder.limit(redisConfig.keyDiscoveryPageSize);
+            KeyScanCursor<String> cursor = redisClientImpl.scan(scanArgs);
+            sink.addAll(cursor.getKeys());
+            while (!cursor.isFinished()) {
+                cursor = redisClientImpl.scan(cursor, scanArgs);
+                sink.addAll(cursor.getKeys());
+            }
+        }));
+    }
+
+    /**
+     * @return how many of the keys are stored, the key manifest checks a sample with it
+     */
+    public long countStored(List<String> keys) {
+        return keys.stream().mapToLong(key -> redisClientImpl.exists(key)).sum();
     }
 
-    public void presetData(MetricFactory metricFactory, List<String> keys) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(redisConfig.presetThreadNum);
-        RedisStorageThread redisStorageThread =
-                new RedisStorageThread(keys, metricFactory, redisConfig, redisClientImpl);
-        List<Callable<Object>> callableList =
-                keys.stream().map(s -> Executors.callable(() -> redisStorageThread.insertData(s)))
-                        .collect(Collectors.toList());
+    /**
+     * SINGLE loads with one SET per key on PRESET_THREAD_NUM threads, PIPELINE and MSET load on
+     * REDIS_PRESET_CONNECTIONS threads, each owning one manually flushed connection.
+     */
+    public void presetData(MetricFactory metricFactory, KeySpace keys, PresetCheckpoint checkpoint) {
+        RedisStorageThread redisStorageThread = new RedisStorageThread(keys, metricFactory, redisConfig,
+                redisClientImpl, verifyService.acquireVerifier(redisConfig, metricFactory));
+        RedisPresetMode presetMode = redisConfig.presetMode;
+        if (presetMode == RedisPresetMode.MSET && redisConfig.redisClusterEnable) {
+            log.warn("MSET preset needs keys of one hash slot per command, a chunk of {} keys spreads over 16384 "
+                    + "slots, preset with PIPELINE instead", redisConfig.presetChunkRows);
+            presetMode = RedisPresetMode.PIPELINE;
+        }
+        if (presetMode == RedisPresetMode.SINGLE) {
+            PresetRunner presetRunner =
+                    new PresetRunner("redis", redisConfig.presetThreadNum, metricFactory, checkpoint);
+            presetRunner.add("redis", keys, redisConfig.presetChunkRows, redisStorageThread::insertEach);
+            presetRunner.run();
+            return;
+        }
+        int connectionNum = Math.max(1, redisConfig.presetConnections);
+        BlockingQueue<StatefulRedisConnection<String, String>> connections = new ArrayBlockingQueue<>(connectionNum);
+        boolean mset = presetMode == RedisPresetMode.MSET;
         try {
-            threadPool.invokeAll(callableList);
-        } catch (InterruptedException e) {
-            log.error("preset s3 data failed ", e);
+            for (int i = 0; i < connectionNum; i++) {
+                connections.add(redisClientImpl.pipelinedConnection());
+            }
+            PresetRunner presetRunner =
+                    new PresetRunner("redis " + presetMode, connectionNum, metricFactory, checkpoint);
+            presetRunner.add("redis", keys, redisConfig.presetChunkRows, chunk -> {
+                StatefulRedisConnection<String, String> connection = connections.take();
+                try {
+                    return mset
+                            ? redisStorageThread.insertMset(chunk, connection)
+                            : redisStorageThread.insertPipelined(chunk, connection);
+                } finally {
+                    connections.add(connection);
+                }
+            });
+            presetRunner.run();
+        } finally {
+            connections.forEach(StatefulRedisConnection::close);
         }
     }
 
-    public void boot(MetricFactory metricFactory, List<String> keys) {
+    public void boot(MetricFactory metricFactory, KeySpace keys) {
+        WorkerEngine workerEngine = new WorkerEngine(redisConfig);
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(redisConfig, metricFactory);
         for (int i = 0; i < redisConfig.threadNum; i++) {
-            new RedisStorageThread(keys, metricFactory, redisConfig, redisClientImpl).start();
+            workerEngine.submit(new RedisStorageThread(keys, metricFactory, redisConfig, redisClientImpl,
+                    payloadVerifier));
+        }
+    }
+
+    @Override
+    public void destroy() {
+        if (redisClientImpl != null) {
+            redisClientImpl.close();
         }
     }
 }
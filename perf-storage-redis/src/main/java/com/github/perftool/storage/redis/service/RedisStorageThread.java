@@ -20,13 +20,29 @@
 package com.github.perftool.storage.redis.service;
 
 import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.distribution.SizeDistribution;
+import com.github.perftool.storage.common.distribution.SizeDistributionFactory;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.metrics.MetricBean;
 import com.github.perftool.storage.common.metrics.MetricFactory;
-import com.github.perftool.storage.common.utils.RandomUtils;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
 import com.github.perftool.storage.redis.RedisClientImpl;
 import com.github.perftool.storage.redis.config.RedisConfig;
+import io.lettuce.core.KeyScanCursor;
+import io.lettuce.core.KeyValue;
+import io.lettuce.core.RedisFuture;
+import io.lettuce.core.ScanArgs;
+import io.lettuce.core.ScanCursor;
+import io.lettuce.core.api.StatefulRedisConnection;
+import io.lettuce.core.api.async.RedisAsyncCommands;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
 
 
 @Slf4j
@@ -34,32 +50,172 @@ public class RedisStorageThread extends AbstractStorageThread {
 
     private final RedisClientImpl redisClientImpl;
     private final RedisConfig redisConfig;
+    private final SizeDistribution dataSizeDistribution;
 
-    public RedisStorageThread(List<String> ids, MetricFactory metricFactory,
-                              RedisConfig redisConfig, RedisClientImpl redisClientImpl) {
-        super(redisConfig, metricFactory, ids);
+    /**
+     * position of the scans of the worker, scans walk the key space from where the previous one stopped.
+     */
+    private ScanCursor scanCursor = ScanCursor.INITIAL;
+
+    public RedisStorageThread(KeySpace keySpace, MetricFactory metricFactory,
+                              RedisConfig redisConfig, RedisClientImpl redisClientImpl,
+                              PayloadVerifier payloadVerifier) {
+        super(redisConfig, metricFactory, keySpace, payloadVerifier);
         this.redisConfig = redisConfig;
         this.redisClientImpl = redisClientImpl;
+        this.dataSizeDistribution = SizeDistributionFactory.create(redisConfig.dataSizeDistribution,
+                redisConfig.dataSize);
     }
 
     @Override
-    public void insertData(String id) {
-        long start = System.currentTimeMillis();
+    public boolean insertData(String id) {
+        return insert(id) >= 0;
+    }
+
+    /**
+     * @return the payload bytes written, zero when the insert failed
+     */
+    private int insert(String id) {
+        long start = startTime();
         try {
-            redisClientImpl.set(id, RandomUtils.getRandomStr(redisConfig.dataSize));
-            insertMetricBean.success(System.currentTimeMillis() - start);
+            String value = insertValue(id, dataSizeDistribution.next(random()));
+            redisClientImpl.set(id, value);
+            insertMetricBean.success(System.currentTimeMillis() - start, value.length());
+            return value.length();
         } catch (Exception e) {
             insertMetricBean.fail(System.currentTimeMillis() - start);
             log.error("redis insert data error ", e);
+            return -1;
+        }
+    }
+
+    /**
+     * inserts the keys one synchronous SET at a time.
+     *
+     * @return the payload bytes written
+     */
+    public long insertEach(KeySpace keys) {
+        long bytes = 0;
+        for (long i = 0; i < keys.size(); i++) {
+            bytes += Math.max(0, insert(keys.key(i)));
         }
+        return bytes;
+    }
+
+    /**
+     * pipelines one SET per key on the connection, flushing every REDIS_PRESET_PIPELINE_DEPTH commands.
+     *
+     * @param connection a connection with manual flushing owned by the calling thread
+     * @return the payload bytes written
+     */
+    public long insertPipelined(KeySpace keys, StatefulRedisConnection<String, String> connection)
+            throws InterruptedException {
+        RedisAsyncCommands<String, String> commands = connection.async();
+        Pipeline pipeline = new Pipeline(connection);
+        for (long i = 0; i < keys.size(); i++) {
+            String id = keys.key(i);
+            String value = insertValue(id, dataSizeDistribution.next(random()));
+            pipeline.add(commands.set(id, value), value.length());
+        }
+        return pipeline.finish(keys.size());
+    }
+
+    /**
+     * pipelines MSET commands of REDIS_PRESET_MSET_KEYS keys on the connection. A cluster rejects multi key
+     * commands across hash slots, so the preset only runs MSET against a single node.
+     *
+     * @param connection a connection with manual flushing owned by the calling thread
+     * @return the payload bytes written
+     */
+    public long insertMset(KeySpace keys, StatefulRedisConnection<String, String> connection)
+            throws InterruptedException {
+        RedisAsyncCommands<String, String> commands = connection.async();
+        Pipeline pipeline = new Pipeline(connection);
+        int msetKeys = Math.max(1, redisConfig.presetMsetKeys);
+        Map<String, String> values = new HashMap<>();
+        int size = 0;
+        for (long i = 0; i < keys.size(); i++) {
+            String id = keys.key(i);
+            String value = insertValue(id, dataSizeDistribution.next(random()));
+            values.put(id, value);
+            size += value.length();
+            if (values.size() == msetKeys || i == keys.size() - 1) {
+                pipeline.add(commands.mset(values), size);
+                values = new HashMap<>();
+                size = 0;
+            }
+        }
+        return pipeline.finish(keys.size());
+    }
+
+    /**
+     * commands queued on a manually flushed connection, every full window is flushed and awaited before more
+     * commands are queued. The latency of a command is measured from the flush of its window.
+     */
+    private class Pipeline {
+
+        private final StatefulRedisConnection<String, String> connection;
+
+        private final int depth = Math.max(1, redisConfig.presetPipelineDepth);
+
+        private final List<RedisFuture<?>> futures = new ArrayList<>(depth);
+
+        private final List<Integer> sizes = new ArrayList<>(depth);
+
+        private long bytes;
+
+        private int failures;
+
+        Pipeline(StatefulRedisConnection<String, String> connection) {
+            this.connection = connection;
+        }
+
+        void add(RedisFuture<?> future, int size) throws InterruptedException {
+            futures.add(future);
+            sizes.add(size);
+            if (futures.size() == depth) {
+                flush();
+            }
+        }
+
+        long finish(long keys) throws InterruptedException {
+            flush();
+            if (failures > 0) {
+                throw new IllegalStateException(failures + " pipelined commands for " + keys + " keys failed");
+            }
+            return bytes;
+        }
+
+        private void flush() throws InterruptedException {
+            long start = System.currentTimeMillis();
+            connection.flushCommands();
+            for (int i = 0; i < futures.size(); i++) {
+                RedisFuture<?> future = futures.get(i);
+                boolean done = future.await(redisConfig.timeout, TimeUnit.SECONDS);
+                if (done && !future.toCompletableFuture().isCompletedExceptionally()) {
+                    insertMetricBean.success(System.currentTimeMillis() - start, sizes.get(i));
+                    bytes += sizes.get(i);
+                } else {
+                    insertMetricBean.fail(System.currentTimeMillis() - start);
+                    if (failures++ == 0) {
+                        log.error("redis pipelined insert fail. {}", done ? future.getError() : "timeout");
+                    }
+                }
+            }
+            futures.clear();
+            sizes.clear();
+        }
+
     }
 
     @Override
     public void updateData(String id) {
-        long start = System.currentTimeMillis();
+        long start = startTime();
         try {
-            redisClientImpl.set(id, RandomUtils.getRandomStr(redisConfig.dataSize));
-            updateMetricBean.success(System.currentTimeMillis() - start);
+            String value = updateValue(id, dataSizeDistribution.next(random()));
+            redisClientImpl.set(id, value);
+            updated(id, value);
+            updateMetricBean.success(System.currentTimeMillis() - start, value.length());
         } catch (Exception e) {
             updateMetricBean.fail(System.currentTimeMillis() - start);
             log.error("redis update data error ", e);
@@ -69,10 +225,12 @@ public class RedisStorageThread extends AbstractStorageThread {
 
     @Override
     public void readData(String id) {
-        long start = System.currentTimeMillis();
+        long start = startTime();
+        int expectedVersion = expectedVersion(id);
         try {
-            redisClientImpl.get(id);
-            readMetricBean.success(System.currentTimeMillis() - start);
+            String value = redisClientImpl.get(id);
+            recordRead(value, start);
+            verify(id, expectedVersion, value);
         } catch (Exception e) {
             readMetricBean.fail(System.currentTimeMillis() - start);
             log.error("redis read data error ", e);
@@ -81,7 +239,7 @@ public class RedisStorageThread extends AbstractStorageThread {
 
     @Override
     public void deleteData(String id) {
-        long start = System.currentTimeMillis();
+        long start = startTime();
         try {
             Long num = redisClientImpl.del(id);
             if (num > 0) {
@@ -95,4 +253,165 @@ public class RedisStorageThread extends AbstractStorageThread {
         }
 
     }
+
+    /**
+     * redis keys have no order to start from, the key is ignored and the worker cursor goes on. The keys of the
+     * SCAN pages are read back with one MGET.
+     */
+    @Override
+    public void scanData(String id, int length) {
+        long start = startTime();
+        try {
+            List<String> keys = new ArrayList<>(length);
+            while (keys.size() < length) {
+                int remaining = length - keys.size();
+                KeyScanCursor<String> ret = redisClientImpl.scan(scanCursor, ScanArgs.Builder.limit(remaining));
+                keys.addAll(ret.getKeys().subList(0, Math.min(ret.getKeys().size(), remaining)));
+                if (ret.isFinished()) {
+                    scanCursor = ScanCursor.INITIAL;
+                    break;
+                }
+                scanCursor = ret;
+            }
+            long size = 0;
+            if (!keys.isEmpty()) {
+                for (KeyValue<String, String> keyValue : redisClientImpl.mget(keys.toArray(new String[0]))) {
+                    size += keyValue.hasValue() ? keyValue.getValue().length() : 0;
+                }
+            }
+            scanMetricBean.success(System.currentTimeMillis() - start, size);
+            scanMetricBean.items(keys.size());
+        } catch (Exception e) {
+            scanMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("redis scan data error ", e);
+        }
+    }
+
+    /**
+     * reads the keys with one MGET.
+     */
+    @Override
+    public void multiReadData(List<String> ids) {
+        long start = startTime();
+        int[] expectedVersions = expectedVersions(ids);
+        try {
+            recordMultiRead(ids, expectedVersions, redisClientImpl.mget(ids.toArray(new String[0])), start);
+        } catch (Exception e) {
+            multiReadMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("redis multi read data error ", e);
+        }
+    }
+
+    private int[] expectedVersions(List<String> ids) {
+        int[] expectedVersions = new int[ids.size()];
+        for (int i = 0; i < ids.size(); i++) {
+            expectedVersions[i] = expectedVersion(ids.get(i));
+        }
+        return expectedVersions;
+    }
+
+    private void recordMultiRead(List<String> ids, int[] expectedVersions, List<KeyValue<String, String>> values,
+                                 long start) {
+        long size = 0;
+        for (KeyValue<String, String> keyValue : values) {
+            size += keyValue.hasValue() ? keyValue.getValue().length() : 0;
+        }
+        multiReadMetricBean.success(System.currentTimeMillis() - start, size);
+        multiReadMetricBean.items(ids.size());
+        for (int i = 0; i < ids.size(); i++) {
+            KeyValue<String, String> keyValue = values.get(i);
+            verify(ids.get(i), expectedVersions[i], keyValue.hasValue() ? keyValue.getValue() : null);
+        }
+    }
+
+    private void recordRead(String value, long start) {
+        if (value == null) {
+            readMetricBean.success(System.currentTimeMillis() - start);
+        } else {
+            readMetricBean.success(System.currentTimeMillis() - start, value.length());
+        }
+    }
+
+    @Override
+    public CompletionStage<Boolean> insertDataAsync(String id) {
+        long start = startTime();
+        String value = insertValue(id, dataSizeDistribution.next(random()));
+        return redisClientImpl.setAsync(id, value).handle((ret, e) -> {
+            if (e == null) {
+                insertMetricBean.success(System.currentTimeMillis() - start, value.length());
+                return true;
+            }
+            insertMetricBean.fail(System.currentTimeMillis() - start);
+            log.error("redis insert data error ", e);
+            return false;
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> updateDataAsync(String id) {
+        long start = startTime();
+        String value = updateValue(id, dataSizeDistribution.next(random()));
+        return record(redisClientImpl.setAsync(id, value).thenRun(() -> updated(id, value)), updateMetricBean,
+                start, value.length(), "update");
+    }
+
+    @Override
+    public CompletionStage<Void> readDataAsync(String id) {
+        long start = startTime();
+        int expectedVersion = expectedVersion(id);
+        return redisClientImpl.getAsync(id).handle((value, e) -> {
+            if (e == null) {
+                recordRead(value, start);
+                verify(id, expectedVersion, value);
+            } else {
+                readMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("redis read data error ", e);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> multiReadDataAsync(List<String> ids) {
+        long start = startTime();
+        int[] expectedVersions = expectedVersions(ids);
+        return redisClientImpl.mgetAsync(ids.toArray(new String[0])).handle((values, e) -> {
+            if (e == null) {
+                recordMultiRead(ids, expectedVersions, values, start);
+            } else {
+                multiReadMetricBean.fail(System.currentTimeMillis() - start);
+                log.error("redis multi read data error ", e);
+            }
+            return null;
+        });
+    }
+
+    @Override
+    public CompletionStage<Void> deleteDataAsync(String id) {
+        long start = startTime();
+        return redisClientImpl.delAsync(id).handle((num, e) -> {
+            if (e == null && num > 0) {
+                deleteMetricBean.success(System.currentTimeMillis() - start);
+            } else {
+                deleteMetricBean.fail(System.currentTimeMillis() - start);
+            }
+            if (e != null) {
+                log.error("redis delete data error ", e);
+            }
+            return null;
+        });
+    }
+
+    private CompletionStage<Void> record(CompletionStage<?> stage, MetricBean metricBean, long start, int size,
+                                         String action) {
+        return stage.handle((ret, e) -> {
+            if (e == null) {
+                metricBean.success(System.currentTimeMillis() - start, size);
+            } else {
+                metricBean.fail(System.currentTimeMillis() - start);
+                log.error("redis {} data error ", action, e);
+            }
+            return null;
+        });
+    }
 }
@@ -52,6 +52,12 @@ public class S3Config extends CommonConfig {
     @Value("${S3_DATA_SIZE:10240}")
     public int dataSize;
 
+    @Value("${S3_DATA_SIZE_DISTRIBUTION:}")
+    public String dataSizeDistribution;
+
+    @Value("${S3_PRESET_CHUNK_ROWS:1000}")
+    public int presetChunkRows;
+
 }
 
 
@@ -27,21 +27,30 @@ import com.amazonaws.client.builder.AwsClientBuilder;
 import com.amazonaws.regions.Regions;
 import com.amazonaws.services.s3.AmazonS3;
 import com.amazonaws.services.s3.AmazonS3ClientBuilder;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
 import com.amazonaws.services.s3.model.ListObjectsV2Result;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
+import com.github.perftool.storage.common.engine.WorkerEngine;
+import com.github.perftool.storage.common.keyspace.KeyDiscovery;
+import com.github.perftool.storage.common.keyspace.KeyRangeScanner;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.StoredKeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
+import com.github.perftool.storage.common.preset.PresetCheckpoint;
+import com.github.perftool.storage.common.preset.PresetRunner;
+import com.github.perftool.storage.common.service.VerifyService;
+import com.github.perftool.storage.common.utils.IDUtils;
 import com.github.perftool.storage.s3.config.S3Config;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.HashSet;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Set;
-import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
-import java.util.stream.Collectors;
 
 @Slf4j
 @Service
@@ -50,50 +59,112 @@ public class S3Service {
     @Autowired
     public S3Config s3Config;
 
+    @Autowired
+    private VerifyService verifyService;
+
     private AmazonS3 s3Client;
 
+    private ExecutorService asyncExecutor;
+
     public void initDatasource() {
         this.s3Client = createAmazonS3();
+        this.asyncExecutor = Executors.newFixedThreadPool(maxConcurrentRequests(), new ThreadFactoryBuilder()
+                .setNameFormat("perf-storage-s3-async-%d").build());
         if (!s3Client.doesBucketExistV2(s3Config.bucketName)) {
             s3Client.createBucket(s3Config.bucketName);
         }
     }
 
-    public Set<String> listKeys() {
-        Set<String> set = new HashSet<>();
-        ListObjectsV2Result ret = s3Client.listObjectsV2(s3Config.bucketName);
-        List<S3ObjectSummary> summaries = ret.getObjectSummaries();
-        for (S3ObjectSummary summary : summaries) {
-            set.add(summary.getKey());
+    /**
+     * identifies the bucket the keys are stored in, for the key manifest fingerprint.
+     */
+    public String datasetIdentity() {
+        return s3Config.serviceEndpoint + "/" + s3Config.bucketName;
+    }
+
+    /**
+     * lists the bucket in key ranges split at hex prefixes, each range pages with continuation tokens.
+     */
+    public StoredKeySpace listKeys() {
+        List<String> points = IDUtils.hexSplitPoints(s3Config.keyDiscoveryThreadNum);
+        List<KeyRangeScanner> scanners = new ArrayList<>();
+        for (int i = 0; i <= points.size(); i++) {
+            String after = i == 0 ? null : points.get(i - 1);
+            String last = i == points.size() ? null : points.get(i);
+            scanners.add(sink -> listKeys(after, last, sink));
         }
-        return set;
+        return KeyDiscovery.discover("s3", s3Config.keyDiscoveryThreadNum, scanners);
     }
 
-    public void presetData(MetricFactory metricFactory, List<String> keys) {
-        ExecutorService threadPool = Executors.newFixedThreadPool(s3Config.presetThreadNum);
-        S3StorageThread s3StorageThread = new S3StorageThread(s3Config, metricFactory, s3Client, keys);
-        List<Callable<Object>> callableList =
-                keys.stream().map(s -> Executors.callable(() -> s3StorageThread.insertData(s)))
-                        .collect(Collectors.toList());
-        try {
-            threadPool.invokeAll(callableList);
-        } catch (InterruptedException e) {
-            log.error("preset s3 data failed ", e);
+    /**
+     * @return how many of the keys are stored in the bucket, the key manifest checks a sample with it
+     */
+    public long countStored(List<String> keys) {
+        return keys.stream().filter(key -> s3Client.doesObjectExist(s3Config.bucketName, key)).count();
+    }
+
+    private void listKeys(String after, String last, StoredKeySpace sink) {
+        ListObjectsV2Request request = new ListObjectsV2Request()
+                .withBucketName(s3Config.bucketName)
+                .withStartAfter(after);
+        while (true) {
+            ListObjectsV2Result ret = s3Client.listObjectsV2(request);
+            List<S3ObjectSummary> summaries = ret.getObjectSummaries();
+            List<String> page = new ArrayList<>(summaries.size());
+            boolean done = !ret.isTruncated();
+            for (S3ObjectSummary summary : summaries) {
+                if (last != null && summary.getKey().compareTo(last) > 0) {
+                    done = true;
+                    break;
+                }
+                page.add(summary.getKey());
+            }
+            sink.addAll(page);
+            if (done) {
+                return;
+            }
+            request.setContinuationToken(ret.getNextContinuationToken());
         }
     }
 
-    public void boot(MetricFactory metricFactory, List<String> keys) {
+    /**
+     * puts the keys on PRESET_THREAD_NUM threads, in chunks of S3_PRESET_CHUNK_ROWS keys.
+     */
+    public void presetData(MetricFactory metricFactory, KeySpace keys, PresetCheckpoint checkpoint) {
+        S3StorageThread s3StorageThread = new S3StorageThread(s3Config, metricFactory, s3Client, keys,
+                asyncExecutor, verifyService.acquireVerifier(s3Config, metricFactory));
+        PresetRunner presetRunner = new PresetRunner("s3", s3Config.presetThreadNum, metricFactory, checkpoint);
+        presetRunner.add(s3Config.bucketName, keys, s3Config.presetChunkRows, s3StorageThread::insertEach);
+        presetRunner.run();
+    }
+
+    public void boot(MetricFactory metricFactory, KeySpace keys) {
+        WorkerEngine workerEngine = new WorkerEngine(s3Config);
+        PayloadVerifier payloadVerifier = verifyService.acquireVerifier(s3Config, metricFactory);
         for (int i = 0; i < s3Config.threadNum; i++) {
-            new S3StorageThread(s3Config, metricFactory, s3Client, keys).start();
+            workerEngine.submit(new S3StorageThread(s3Config, metricFactory, s3Client, keys, asyncExecutor,
+                    payloadVerifier));
         }
     }
 
+    /**
+     * requests the workers issue at once, every operation in flight may be a multi read fanning out to
+     * MULTI_READ_SIZE gets. The async executor and the connection pool are both sized to it, larger multi reads
+     * of a size distribution queue on the executor.
+     */
+    private int maxConcurrentRequests() {
+        int perOperation = s3Config.multiReadRatePercent > 0 ? Math.max(1, s3Config.multiReadSize) : 1;
+        return Math.max(1, s3Config.threadNum) * Math.max(1, s3Config.maxInFlightPerWorker) * perOperation;
+    }
+
     private AmazonS3 createAmazonS3() {
         AWSCredentials credentials = new BasicAWSCredentials(s3Config.accessKey, s3Config.secretKey);
         ClientConfiguration clientConfiguration = new ClientConfiguration();
         clientConfiguration.setConnectionTimeout(s3Config.awsConnectTimeoutMs);
         clientConfiguration.setRequestTimeout(s3Config.awsRequestTimeout);
         clientConfiguration.setSignerOverride(s3Config.signerOverrideType);
+        clientConfiguration.setMaxConnections(Math.max(ClientConfiguration.DEFAULT_MAX_CONNECTIONS,
+                maxConcurrentRequests()));
         return AmazonS3ClientBuilder
                 .standard()
                 .withEndpointConfiguration(
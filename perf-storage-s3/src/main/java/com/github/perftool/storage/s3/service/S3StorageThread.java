@@ -20,10 +20,17 @@
 package com.github.perftool.storage.s3.service;
 
 import com.amazonaws.services.s3.AmazonS3;
+import com.amazonaws.services.s3.model.AmazonS3Exception;
+import com.amazonaws.services.s3.model.ListObjectsV2Request;
+import com.amazonaws.services.s3.model.ListObjectsV2Result;
+import com.amazonaws.services.s3.model.ObjectMetadata;
 import com.amazonaws.services.s3.model.S3Object;
 import com.github.perftool.storage.common.AbstractStorageThread;
+import com.github.perftool.storage.common.distribution.SizeDistribution;
+import com.github.perftool.storage.common.distribution.SizeDistributionFactory;
+import com.github.perftool.storage.common.keyspace.KeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
-import com.github.perftool.storage.common.utils.RandomUtils;
+import com.github.perftool.storage.common.payload.PayloadVerifier;
 import com.github.perftool.storage.s3.config.S3Config;
 import io.github.perftool.trace.module.SpanInfo;
 import io.github.perftool.trace.module.TraceBean;
@@ -33,12 +40,21 @@ import io.github.perftool.trace.util.InboundCounter;
 import lombok.extern.slf4j.Slf4j;
 import org.apache.commons.io.IOUtils;
 
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
 import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
 
 @Slf4j
 public class S3StorageThread extends AbstractStorageThread {
 
+    private static final int MAX_LIST_KEYS = 1000;
+
     private final S3Config s3Config;
     private final AmazonS3 s3Client;
 
@@ -46,16 +62,29 @@ public class S3StorageThread extends AbstractStorageThread {
 
     private final InboundCounter inboundCounter;
 
-    public S3StorageThread(S3Config s3Config, MetricFactory metricFactory, AmazonS3 s3Client, List<String> keys) {
-        super(s3Config, metricFactory, keys);
+    /**
+     * the v1 sdk has no asynchronous s3 client, pipelined operations run the blocking calls on this executor.
+     */
+    private final Executor asyncExecutor;
+
+    private final SizeDistribution dataSizeDistribution;
+
+    public S3StorageThread(S3Config s3Config, MetricFactory metricFactory, AmazonS3 s3Client, KeySpace keySpace,
+                           Executor asyncExecutor, PayloadVerifier payloadVerifier) {
+        super(s3Config, metricFactory, keySpace, payloadVerifier);
         this.s3Config = s3Config;
         this.s3Client = s3Client;
+        this.asyncExecutor = asyncExecutor;
+        this.dataSizeDistribution = SizeDistributionFactory.create(s3Config.dataSizeDistribution, s3Config.dataSize);
         inboundCounter = new InboundCounter(999);
     }
 
     @Override
-    public void insertData(String key) {
-        long start = System.currentTimeMillis();
+    public boolean insertData(String key) {
+        return this.doInsert(key, startTime());
+    }
+
+    private boolean doInsert(String key, long start) {
         try {
             TraceBean traceBean = new TraceBean();
             String traceId = String.format("%s-%d", ReportUtil.traceIdPrefix(), inboundCounter.get());
@@ -64,23 +93,49 @@ public class S3StorageThread extends AbstractStorageThread {
             spanInfo.setSpanId(traceId);
             traceBean.setSpanInfo(spanInfo);
             traceReporter.reportTrace(traceBean);
-            s3Client.putObject(s3Config.bucketName, key, RandomUtils.getRandomStr(s3Config.dataSize));
-            insertMetricBean.success(System.currentTimeMillis() - start);
+            int size = this.putObject(key, false);
+            insertMetricBean.success(System.currentTimeMillis() - start, size);
             String spanId = String.format("%s-%d", ReportUtil.spanIdPrefix(), inboundCounter.get());
             traceBean.getSpanInfo().setSpanId(spanId);
             traceReporter.reportTrace(traceBean);
+            return true;
         } catch (Exception e) {
             insertMetricBean.fail(System.currentTimeMillis() - start);
             log.error("s3 put object error ", e);
+            return false;
         }
     }
 
+    /**
+     * puts the keys one at a time, a failed put fails the whole chunk so a resumed preset loads it again.
+     *
+     * @return the payload bytes written
+     */
+    public long insertEach(KeySpace keys) {
+        long bytes = 0;
+        for (long i = 0; i < keys.size(); i++) {
+            long start = startTime();
+            try {
+                int size = this.putObject(keys.key(i), false);
+                insertMetricBean.success(System.currentTimeMillis() - start, size);
+                bytes += size;
+            } catch (RuntimeException e) {
+                insertMetricBean.fail(System.currentTimeMillis() - start);
+                throw e;
+            }
+        }
+        return bytes;
+    }
+
     @Override
     public void updateData(String key) {
-        long start = System.currentTimeMillis();
+        this.doUpdate(key, startTime());
+    }
+
+    private void doUpdate(String key, long start) {
         try {
-            s3Client.putObject(s3Config.bucketName, key, RandomUtils.getRandomStr(s3Config.dataSize));
-            updateMetricBean.success(System.currentTimeMillis() - start);
+            int size = this.putObject(key, true);
+            updateMetricBean.success(System.currentTimeMillis() - start, size);
         } catch (Exception e) {
             updateMetricBean.fail(System.currentTimeMillis() - start);
             log.error("s3 update object error ", e);
@@ -89,20 +144,84 @@ public class S3StorageThread extends AbstractStorageThread {
 
     @Override
     public void readData(String key) {
-        long start = System.currentTimeMillis();
+        this.doRead(key, startTime());
+    }
+
+    private void doRead(String key, long start) {
+        int expectedVersion = expectedVersion(key);
         try {
-            S3Object s3ClientObject = s3Client.getObject(s3Config.bucketName, key);
-            IOUtils.toString(s3ClientObject.getObjectContent(), StandardCharsets.UTF_8);
-            readMetricBean.success(System.currentTimeMillis() - start);
+            long size = this.getObject(key, expectedVersion);
+            readMetricBean.success(System.currentTimeMillis() - start, size);
         } catch (Exception e) {
             readMetricBean.fail(System.currentTimeMillis() - start);
             log.warn("s3 read content error ", e);
         }
     }
 
+    /**
+     * @return the bytes read
+     */
+    private long getObject(String key, int expectedVersion) throws IOException {
+        try (S3Object s3ClientObject = s3Client.getObject(s3Config.bucketName, key)) {
+            if (!verifying()) {
+                return IOUtils.consume(s3ClientObject.getObjectContent());
+            }
+            String value = IOUtils.toString(s3ClientObject.getObjectContent(), StandardCharsets.ISO_8859_1);
+            verify(key, expectedVersion, value);
+            return value.length();
+        } catch (AmazonS3Exception e) {
+            if (e.getStatusCode() == 404) {
+                verify(key, expectedVersion, null);
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * s3 has no multi object get, the objects are read in parallel on the async executor and the batch takes
+     * as long as the slowest of them.
+     */
+    @Override
+    public void multiReadData(List<String> keys) {
+        this.multiReadDataAsync(keys).toCompletableFuture().join();
+    }
+
+    @Override
+    public CompletionStage<Void> multiReadDataAsync(List<String> keys) {
+        long start = startTime();
+        List<CompletableFuture<Long>> reads = new ArrayList<>(keys.size());
+        for (String key : keys) {
+            int expectedVersion = expectedVersion(key);
+            reads.add(CompletableFuture.supplyAsync(() -> {
+                try {
+                    return this.getObject(key, expectedVersion);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }, asyncExecutor));
+        }
+        return CompletableFuture.allOf(reads.toArray(new CompletableFuture<?>[0])).handle((ret, e) -> {
+            if (e == null) {
+                long size = 0;
+                for (CompletableFuture<Long> read : reads) {
+                    size += read.join();
+                }
+                multiReadMetricBean.success(System.currentTimeMillis() - start, size);
+                multiReadMetricBean.items(keys.size());
+            } else {
+                multiReadMetricBean.fail(System.currentTimeMillis() - start);
+                log.warn("s3 multi read content error ", e);
+            }
+            return null;
+        });
+    }
+
     @Override
     public void deleteData(String key) {
-        long start = System.currentTimeMillis();
+        this.doDelete(key, startTime());
+    }
+
+    private void doDelete(String key, long start) {
         try {
             s3Client.deleteObject(s3Config.bucketName, key);
             deleteMetricBean.success(System.currentTimeMillis() - start);
@@ -111,4 +230,86 @@ public class S3StorageThread extends AbstractStorageThread {
             log.warn("s3 delete content error ", e);
         }
     }
+
+    /**
+     * in verify mode the object is a verifiable text value instead of a slice of the binary pool.
+     */
+    private int putObject(String key, boolean update) {
+        int size = dataSizeDistribution.next(random());
+        ObjectMetadata metadata = new ObjectMetadata();
+        if (!verifying()) {
+            metadata.setContentLength(size);
+            s3Client.putObject(s3Config.bucketName, key, randomValueStream(size), metadata);
+            return size;
+        }
+        String value = update ? updateValue(key, size) : insertValue(key, size);
+        byte[] bytes = value.getBytes(StandardCharsets.ISO_8859_1);
+        metadata.setContentLength(bytes.length);
+        s3Client.putObject(s3Config.bucketName, key, new ByteArrayInputStream(bytes), metadata);
+        if (update) {
+            updated(key, value);
+        }
+        return bytes.length;
+    }
+
+    /**
+     * lists the bucket from the key on, a listing page holds at most 1000 keys so long scans take several.
+     */
+    @Override
+    public void scanData(String key, int length) {
+        this.doScan(key, length, startTime());
+    }
+
+    private void doScan(String key, int length, long start) {
+        try {
+            ListObjectsV2Request request = new ListObjectsV2Request()
+                    .withBucketName(s3Config.bucketName)
+                    .withStartAfter(key);
+            long items = 0;
+            while (true) {
+                request.setMaxKeys((int) Math.min(MAX_LIST_KEYS, length - items));
+                ListObjectsV2Result ret = s3Client.listObjectsV2(request);
+                items += ret.getObjectSummaries().size();
+                if (items >= length || !ret.isTruncated()) {
+                    break;
+                }
+                request.setContinuationToken(ret.getNextContinuationToken());
+            }
+            scanMetricBean.success(System.currentTimeMillis() - start);
+            scanMetricBean.items(items);
+        } catch (Exception e) {
+            scanMetricBean.fail(System.currentTimeMillis() - start);
+            log.warn("s3 list objects error ", e);
+        }
+    }
+
+    @Override
+    public CompletionStage<Void> scanDataAsync(String key, int length) {
+        long start = startTime();
+        return CompletableFuture.runAsync(() -> this.doScan(key, length, start), asyncExecutor);
+    }
+
+    @Override
+    public CompletionStage<Boolean> insertDataAsync(String key) {
+        long start = startTime();
+        return CompletableFuture.supplyAsync(() -> this.doInsert(key, start), asyncExecutor);
+    }
+
+    @Override
+    public CompletionStage<Void> updateDataAsync(String key) {
+        long start = startTime();
+        return CompletableFuture.runAsync(() -> this.doUpdate(key, start), asyncExecutor);
+    }
+
+    @Override
+    public CompletionStage<Void> readDataAsync(String key) {
+        long start = startTime();
+        return CompletableFuture.runAsync(() -> this.doRead(key, start), asyncExecutor);
+    }
+
+    @Override
+    public CompletionStage<Void> deleteDataAsync(String key) {
+        long start = startTime();
+        return CompletableFuture.runAsync(() -> this.doDelete(key, start), asyncExecutor);
+    }
 }
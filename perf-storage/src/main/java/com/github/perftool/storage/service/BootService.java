@@ -23,30 +23,39 @@ package com.github.perftool.storage.service;
 import com.github.perftool.storage.cassandra.service.CassandraBootService;
 import com.github.perftool.storage.common.config.CommonConfig;
 import com.github.perftool.storage.common.config.StorageType;
+import com.github.perftool.storage.common.keyspace.CompositeKeySpace;
+import com.github.perftool.storage.common.keyspace.IndexKeySpace;
+import com.github.perftool.storage.common.keyspace.KeyManifest;
+import com.github.perftool.storage.common.keyspace.KeySpace;
+import com.github.perftool.storage.common.keyspace.LiveKeySpace;
+import com.github.perftool.storage.common.keyspace.StoredKeySpace;
 import com.github.perftool.storage.common.metrics.MetricFactory;
+import com.github.perftool.storage.common.preset.PresetCheckpoint;
 import com.github.perftool.storage.common.service.MetricsService;
-import com.github.perftool.storage.common.utils.IDUtils;
 import com.github.perftool.storage.config.StorageConfig;
 import com.github.perftool.storage.mysql.service.MysqlService;
 import com.github.perftool.storage.redis.service.RedisService;
 import com.github.perftool.storage.s3.service.S3Service;
 import io.netty.util.concurrent.DefaultThreadFactory;
 import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
-import java.util.ArrayList;
-import java.util.HashSet;
+import java.io.IOException;
+import java.nio.file.Paths;
 import java.util.List;
-import java.util.Set;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
 
 @Service
 @Slf4j
 public class BootService {
 
+    private static final int MANIFEST_SAMPLE_KEYS = 64;
+
     @Autowired
     private StorageConfig storageConfig;
 
@@ -68,13 +77,25 @@ public class BootService {
     @Autowired
     private CassandraBootService cassandraBootService;
 
+    /**
+     * the manifest the workers record their inserts and deletes in, null until they run or without one.
+     */
+    private volatile KeyManifest manifest;
+
     @PostConstruct
     public void init() {
         log.info("storage type : {}", storageConfig.storageType);
         MetricFactory metricFactory = metricsService.acquireMetricFactory(storageConfig.storageType);
         ExecutorService executorService =
                 Executors.newSingleThreadExecutor(new DefaultThreadFactory("perf-storage-init"));
-        executorService.execute(() -> BootService.this.initAsync(metricFactory));
+        executorService.execute(() -> {
+            try {
+                BootService.this.initAsync(metricFactory);
+            } catch (RuntimeException e) {
+                log.error("init perf storage fail, exit. ", e);
+                System.exit(1);
+            }
+        });
     }
 
     /**
@@ -91,35 +112,92 @@ public class BootService {
             }
         }
 
-        Set<String> nowKeys = new HashSet<>();
-        switch (storageConfig.storageType) {
-            case DUMMY -> log.info("dummy storage");
-            case MYSQL -> nowKeys = mysqlService.listKeys();
-            case REDIS -> nowKeys = redisService.listKeys();
-            case S3 -> nowKeys = s3Service.listKeys();
-            case CASSANDRA -> nowKeys = cassandraBootService.listKeys();
-            default -> {
+        String identity = datasetIdentity();
+        KeyManifest manifest = openManifest(identity);
+        PresetCheckpoint checkpoint = openCheckpoint(identity);
+        PresetCheckpoint.Plan resumedPlan = checkpoint == null ? null : checkpoint.plan();
+        KeySpace nowKeys;
+        long nowLiveKeys;
+        boolean restored = false;
+        if (manifest != null && manifest.size() > 0 && !matchesBackend(manifest)) {
+            manifest.reset();
+        }
+        if (manifest != null && manifest.size() > 0) {
+            if (resumedPlan != null) {
+                clearPlanKeys(manifest, resumedPlan);
+            }
+            nowKeys = manifest.keys();
+            nowLiveKeys = manifest.liveCount();
+            restored = true;
+            log.info("restored {} keys from the key manifest, skip the backend scan", nowLiveKeys);
+        } else {
+            StoredKeySpace storedKeys = listKeys();
+            if (resumedPlan != null) {
+                storedKeys = withoutPlanKeys(storedKeys, resumedPlan);
+            }
+            if (manifest != null) {
+                manifest.putAll(0, storedKeys);
+            }
+            nowKeys = storedKeys;
+            nowLiveKeys = storedKeys.size();
+        }
+        log.info("current key size is {}", nowLiveKeys);
+        // with a fixed seed the generated keys continue the sequence past the keys a previous run stored
+        long keySeed;
+        long keyOffset;
+        long needDataSetSize;
+        if (resumedPlan != null) {
+            // an interrupted preset resumes with the keys it planned, whatever the config asks for now
+            keySeed = resumedPlan.seed();
+            keyOffset = resumedPlan.offset();
+            needDataSetSize = resumedPlan.size();
+        } else {
+            keySeed = commonConfig.randomSeed == 0 ? ThreadLocalRandom.current().nextLong() : commonConfig.randomSeed;
+            keyOffset = commonConfig.randomSeed == 0 ? 0
+                    : nextSequenceIndex(restored ? manifest : null, nowKeys, keySeed);
+            needDataSetSize = commonConfig.dataSetSize - nowLiveKeys;
+            if (needDataSetSize > 0 && checkpoint != null) {
+                checkpoint = beginCheckpoint(checkpoint,
+                        new PresetCheckpoint.Plan(keySeed, keyOffset, needDataSetSize));
             }
         }
-        log.info("current key size is {}", nowKeys.size());
-        log.debug("the now key : {}", nowKeys);
-        List<String> keys = new ArrayList<>();
-        int needDataSetSize = commonConfig.dataSetSize - nowKeys.size();
+        if (manifest != null) {
+            manifest.setNextSequenceIndex(keySeed, keyOffset);
+        }
         if (needDataSetSize > 0) {
-            keys = IDUtils.getTargetIds(needDataSetSize);
-            log.info("generated {} keys", keys);
+            KeySpace newKeys = new IndexKeySpace(keySeed, keyOffset, needDataSetSize);
+            log.info("generated {} keys", needDataSetSize);
             switch (storageConfig.storageType) {
                 case DUMMY -> log.info("dummy storage");
-                case MYSQL -> mysqlService.presetData(metricFactory, keys);
-                case REDIS -> redisService.presetData(metricFactory, keys);
-                case S3 -> s3Service.presetData(metricFactory, keys);
-                case CASSANDRA -> cassandraBootService.presetData(metricFactory, keys);
+                case MYSQL -> mysqlService.presetData(metricFactory, newKeys, checkpoint);
+                case REDIS -> redisService.presetData(metricFactory, newKeys, checkpoint);
+                case S3 -> s3Service.presetData(metricFactory, newKeys, checkpoint);
+                case CASSANDRA -> cassandraBootService.presetData(metricFactory, newKeys, checkpoint);
                 default -> {
                 }
             }
+            if (manifest != null) {
+                manifest.putAll(nowKeys.size(), newKeys);
+            }
+            completeCheckpoint(checkpoint);
         }
-        keys.addAll(nowKeys);
-        log.info("key size now is {}", keys.size());
+        // inserts of a churn workload allocate past the preset keys, so the generated part is unbounded
+        // every table stores every key, the workers of a table insert and delete the key in all of them
+        KeySpace generated = new IndexKeySpace(keySeed, keyOffset, Long.MAX_VALUE - keyOffset);
+        LiveKeySpace keys = new LiveKeySpace(new CompositeKeySpace(nowKeys, generated),
+                nowKeys.size() + Math.max(needDataSetSize, 0));
+        if (manifest != null) {
+            if (!manifest.isDense()) {
+                for (long i = 0; i < nowKeys.size(); i++) {
+                    if (manifest.isEmpty(i)) {
+                        keys.discard(i);
+                    }
+                }
+            }
+            keys.useManifest(manifest);
+            this.manifest = manifest;
+        }
+        log.info("key size now is {}", keys.liveCount());
         if (storageConfig.storageType == StorageType.DUMMY) {
             log.info("dummy storage");
         } else if (storageConfig.storageType == StorageType.MYSQL) {
@@ -133,5 +211,179 @@ public class BootService {
         }
     }
 
+    /**
+     * folds the counts of the manifest into its header, so the next boot does not recount its records.
+     */
+    @PreDestroy
+    public void close() {
+        KeyManifest keyManifest = manifest;
+        if (keyManifest != null) {
+            keyManifest.force();
+        }
+    }
+
+    /**
+     * the first index of the seeded key sequence past every stored key. Deletes and inserts of a churn workload
+     * leave the stored keys scattered over the sequence, so their count is no safe place to continue from. A
+     * restored manifest that followed the seed knows the index, else every stored key is looked up.
+     *
+     * @param manifest the restored manifest, null when the keys were scanned from the backend
+     */
+    private long nextSequenceIndex(KeyManifest manifest, KeySpace storedKeys, long seed) {
+        long recorded = manifest == null ? -1 : manifest.nextSequenceIndex(seed);
+        if (recorded >= 0) {
+            log.info("the key manifest continues the key sequence at index {}", recorded);
+            return recorded;
+        }
+        IndexKeySpace sequence = new IndexKeySpace(seed, 0, Long.MAX_VALUE);
+        long next = 0;
+        for (long i = 0; i < storedKeys.size(); i++) {
+            next = Math.max(next, sequence.indexOf(storedKeys.key(i)) + 1);
+        }
+        log.info("stored keys reach index {} of the key sequence", next);
+        return next;
+    }
+
+    /**
+     * the fingerprint only names the target, a sample of the recorded keys tells whether the data is still
+     * there. A few missing keys are tolerated, a run killed between a delete and the manifest update leaves them.
+     */
+    private boolean matchesBackend(KeyManifest manifest) {
+        List<String> sample = manifest.sample(MANIFEST_SAMPLE_KEYS);
+        long stored;
+        try {
+            stored = countStored(sample);
+        } catch (RuntimeException e) {
+            log.warn("check the key manifest against the backend fail, scan the backend instead. ", e);
+            return false;
+        }
+        if (stored * 10 < sample.size() * 9L) {
+            log.warn("only {} of {} sampled manifest keys are stored in the backend, scan the backend instead",
+                    stored, sample.size());
+            return false;
+        }
+        return true;
+    }
+
+    private long countStored(List<String> keys) {
+        return switch (storageConfig.storageType) {
+            case MYSQL -> mysqlService.countStored(keys);
+            case REDIS -> redisService.countStored(keys);
+            case S3 -> s3Service.countStored(keys);
+            case CASSANDRA -> cassandraBootService.countStored(keys);
+            default -> keys.size();
+        };
+    }
+
+    private StoredKeySpace listKeys() {
+        return switch (storageConfig.storageType) {
+            case MYSQL -> mysqlService.listKeys();
+            case REDIS -> redisService.listKeys();
+            case S3 -> s3Service.listKeys();
+            case CASSANDRA -> cassandraBootService.listKeys();
+            default -> new StoredKeySpace();
+        };
+    }
+
+    /**
+     * drops the scanned keys an interrupted preset already loaded, they are loaded again as part of its plan.
+     */
+    private StoredKeySpace withoutPlanKeys(StoredKeySpace storedKeys, PresetCheckpoint.Plan plan) {
+        IndexKeySpace planKeys = new IndexKeySpace(plan.seed(), plan.offset(), plan.size());
+        StoredKeySpace result = new StoredKeySpace();
+        storedKeys.forEach(key -> {
+            if (planKeys.indexOf(key) < 0) {
+                result.add(key);
+            }
+        });
+        log.info("{} of the scanned keys belong to the interrupted preset", storedKeys.size() - result.size());
+        return result;
+    }
+
+    /**
+     * clears the keys an interrupted preset already recorded in the manifest, they are loaded and recorded again
+     * as part of its plan. Records are not sequence offsets once a churn workload ran, so every record is matched
+     * against the plan instead of cutting the manifest at the plan offset. The cleared records stay as holes.
+     */
+    private void clearPlanKeys(KeyManifest manifest, PresetCheckpoint.Plan plan) {
+        IndexKeySpace planKeys = new IndexKeySpace(plan.seed(), plan.offset(), plan.size());
+        KeySpace recorded = manifest.keys();
+        long cleared = 0;
+        for (long i = 0; i < recorded.size(); i++) {
+            if (!manifest.isEmpty(i) && planKeys.indexOf(recorded.key(i)) >= 0) {
+                manifest.clear(i);
+                cleared++;
+            }
+        }
+        manifest.force();
+        log.info("{} of the manifest keys belong to the interrupted preset", cleared);
+    }
+
+    /**
+     * @return the identity of the backend target, null when the storage type stores nothing
+     */
+    private String datasetIdentity() {
+        String identity = switch (storageConfig.storageType) {
+            case MYSQL -> mysqlService.datasetIdentity();
+            case REDIS -> redisService.datasetIdentity();
+            case S3 -> s3Service.datasetIdentity();
+            case CASSANDRA -> cassandraBootService.datasetIdentity();
+            default -> null;
+        };
+        return identity == null ? null : storageConfig.storageType + "|" + identity;
+    }
+
+    /**
+     * @return the preset checkpoint of the target, null when PRESET_CHECKPOINT_PATH is not set or it can not be
+     * read
+     */
+    private PresetCheckpoint openCheckpoint(String identity) {
+        if (commonConfig.presetCheckpointPath.isEmpty() || identity == null) {
+            return null;
+        }
+        try {
+            return PresetCheckpoint.open(Paths.get(commonConfig.presetCheckpointPath), identity);
+        } catch (IOException e) {
+            log.error("open preset checkpoint {} fail, preset without it. ", commonConfig.presetCheckpointPath, e);
+            return null;
+        }
+    }
+
+    private PresetCheckpoint beginCheckpoint(PresetCheckpoint checkpoint, PresetCheckpoint.Plan plan) {
+        try {
+            checkpoint.begin(plan);
+            return checkpoint;
+        } catch (IOException e) {
+            log.error("write preset checkpoint {} fail, preset without it. ", commonConfig.presetCheckpointPath, e);
+            return null;
+        }
+    }
+
+    private void completeCheckpoint(PresetCheckpoint checkpoint) {
+        if (checkpoint == null) {
+            return;
+        }
+        try {
+            checkpoint.complete();
+        } catch (IOException e) {
+            log.warn("remove preset checkpoint {} fail. ", commonConfig.presetCheckpointPath, e);
+        }
+    }
+
+    /**
+     * @return the key manifest of the target, null when KEY_MANIFEST_PATH is not set or it can not be opened
+     */
+    private KeyManifest openManifest(String identity) {
+        if (commonConfig.keyManifestPath.isEmpty() || identity == null) {
+            return null;
+        }
+        try {
+            return KeyManifest.open(Paths.get(commonConfig.keyManifestPath), identity);
+        } catch (IOException e) {
+            log.error("open key manifest {} fail, scan the backend instead. ", commonConfig.keyManifestPath, e);
+            return null;
+        }
+    }
+
 }
 